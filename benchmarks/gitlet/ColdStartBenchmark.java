@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Measures the cold start of each command: a new JVM runs it in a small
+ *  repository, and the benchmark times how long the first byte of output
+ *  takes to arrive and how long the process takes to exit, with and
+ *  without a class-data sharing archive.  A command that prints nothing
+ *  reports its exit time as its first output.  Each time is the median of
+ *  several runs.
+ *  Usage: java gitlet.ColdStartBenchmark JAR ARCHIVE [RUNS]
+ *  @author Austin Ralleta
+ */
+public class ColdStartBenchmark {
+
+    /** Runs the benchmark.
+     * @param args are the gitlet jar, the archive made for it and the
+     *             number of runs of each command.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static void main(String... args)
+            throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: java gitlet.ColdStartBenchmark JAR"
+                    + " ARCHIVE [RUNS]");
+            System.exit(1);
+        }
+        String jar = new File(args[0]).getAbsolutePath();
+        String archive = new File(args[1]).getAbsolutePath();
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        File dir = Files.createTempDirectory("gitlet-cold").toFile();
+        String[] plain = {JAVA, "-cp", jar, "gitlet.Main"};
+        String[] shared = {JAVA, "-XX:SharedArchiveFile=" + archive,
+            "-Xshare:auto", "-cp", jar, "gitlet.Main"};
+
+        run(dir, plain, "init");
+        for (int i = 0; i < FILES; i += 1) {
+            Utils.writeContents(Utils.join(dir, "f" + i + ".txt"),
+                    "file " + i + "\n");
+        }
+        run(dir, plain, "add", ".");
+        run(dir, plain, "commit", "files");
+
+        System.out.printf("%-12s %14s %10s %14s %10s%n", "command",
+                "first output", "exit", "first (cds)", "exit (cds)");
+        for (String[] command : COMMANDS) {
+            long[] without = time(dir, plain, command, runs);
+            long[] with = time(dir, shared, command, runs);
+            System.out.printf("%-12s %11.1f ms %7.1f ms %11.1f ms %7.1f ms%n",
+                    command[0], without[0] / 1e6, without[1] / 1e6,
+                    with[0] / 1e6, with[1] / 1e6);
+        }
+    }
+
+    /**
+     * Times a command several times.  Before each run of commit, a file
+     * is changed and added, untimed, so that there is something to commit.
+     * @param dir is the working directory.
+     * @param java is the command line up to the gitlet arguments.
+     * @param command is the gitlet arguments.
+     * @param runs is the number of runs.
+     * @return the median nanoseconds to first output and to exit.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static long[] time(File dir, String[] java, String[] command,
+                               int runs)
+            throws IOException, InterruptedException {
+        long[] first = new long[runs];
+        long[] exit = new long[runs];
+        for (int r = 0; r < runs; r += 1) {
+            if (command[0].equals("commit")) {
+                Utils.writeContents(Utils.join(dir, "f0.txt"),
+                        "run " + System.nanoTime() + "\n");
+                run(dir, java, "add", "f0.txt");
+            }
+            long[] t = run(dir, java, command);
+            first[r] = t[0];
+            exit[r] = t[1];
+        }
+        Arrays.sort(first);
+        Arrays.sort(exit);
+        return new long[] {first[runs / 2], exit[runs / 2]};
+    }
+
+    /**
+     * Runs a command in a new JVM.
+     * @param dir is the working directory.
+     * @param java is the command line up to the gitlet arguments.
+     * @param command is the gitlet arguments.
+     * @return the nanoseconds to first output and to exit.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static long[] run(File dir, String[] java, String... command)
+            throws IOException, InterruptedException {
+        List<String> line = new ArrayList<>(Arrays.asList(java));
+        line.addAll(Arrays.asList(command));
+        ProcessBuilder builder = new ProcessBuilder(line);
+        builder.directory(dir);
+        builder.redirectErrorStream(true);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        long first = -1;
+        try (InputStream out = process.getInputStream()) {
+            byte[] buf = new byte[1 << 13];
+            int n;
+            while ((n = out.read(buf)) >= 0) {
+                if (first < 0 && n > 0) {
+                    first = System.nanoTime() - start;
+                }
+            }
+        }
+        process.waitFor();
+        long exit = System.nanoTime() - start;
+        return new long[] {first < 0 ? exit : first, exit};
+    }
+
+    /** The commands timed, each run repeatedly in the same repository. */
+    private static final String[][] COMMANDS = {
+        {"status"}, {"log"}, {"global-log"}, {"find", "files"},
+        {"branch", "other"}, {"rm-branch", "other"}, {"add", "f1.txt"},
+        {"checkout", "--", "f1.txt"}, {"commit", "change"},
+    };
+
+    /** Number of files in the repository. */
+    private static final int FILES = 100;
+
+    /** The java launcher running this benchmark. */
+    private static final String JAVA =
+        ProcessHandle.current().info().command().orElse("java");
+}
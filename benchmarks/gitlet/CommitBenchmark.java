@@ -0,0 +1,51 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/** Measures how many commits per second a repository takes with each
+ *  durability setting, by adding and committing one changed file at a
+ *  time in a fresh repository in a temporary directory.  The commands run
+ *  in this process, so the numbers leave out JVM startup.
+ *  Usage: java gitlet.CommitBenchmark [COMMITS]
+ *  @author Austin Ralleta
+ */
+public class CommitBenchmark {
+
+    /** Runs the benchmark.
+     * @param args is the number of commits made with each setting.
+     * @throws IOException
+     */
+    public static void main(String... args) throws IOException {
+        int commits = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        Commands.init();
+        report("fast", dir, commits);
+        report("safe", dir, commits);
+    }
+
+    /**
+     * Makes commits with one durability setting and prints their rate.
+     * @param durability is the setting.
+     * @param dir is the working directory of the repository.
+     * @param commits is the number of commits to make.
+     * @throws IOException
+     */
+    private static void report(String durability, File dir, int commits)
+            throws IOException {
+        Utils.writeContents(Utils.join(dir, ".gitlet", "config"),
+                "durability=" + durability + "\n");
+        File file = Utils.join(dir, "wug.txt");
+        long start = System.nanoTime();
+        for (int i = 0; i < commits; i += 1) {
+            Utils.writeContents(file, durability + " " + i + "\n");
+            Commands.add("wug.txt");
+            Commands.commit(durability + " " + i);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-5s %6d commits %8.3f s %10.1f commits/s%n",
+                durability, commits, seconds, commits / seconds);
+    }
+}
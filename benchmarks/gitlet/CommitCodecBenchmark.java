@@ -0,0 +1,64 @@
+package gitlet;
+
+/** Measures how fast commits decode from the binary commit format and
+ *  from Java serialization, by walking a synthetic first-parent history.
+ *  Commits name their root tree rather than listing their files, so their
+ *  size no longer depends on the number of files.
+ *  Usage: java gitlet.CommitCodecBenchmark [COMMITS [ROUNDS]]
+ *  @author Austin Ralleta
+ */
+public class CommitCodecBenchmark {
+
+    /** Runs the benchmark.
+     * @param args are the history length and the number of timed rounds.
+     */
+    public static void main(String... args) {
+        int commits = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        byte[][] binary = new byte[commits][];
+        byte[][] serialized = new byte[commits][];
+        String parent = null;
+        for (int i = 0; i < commits; i += 1) {
+            Commit c = parent == null
+                    ? new Commit("Thu Jan 01 00:00:00 1970 +0000", "initial")
+                    : new Commit("commit " + i, Utils.sha1("tree" + i),
+                            parent, "master");
+            binary[i] = c.encode();
+            serialized[i] = Utils.serialize(c);
+            parent = c.getCommitId();
+        }
+        report("binary", binary, rounds);
+        report("serialized", serialized, rounds);
+    }
+
+    /**
+     * Decodes a history newest to oldest several times and prints the best
+     * throughput.
+     * @param name is the name of the format.
+     * @param history is the encoded commits, oldest first.
+     * @param rounds is the number of timed rounds.
+     */
+    private static void report(String name, byte[][] history, int rounds) {
+        long bytes = 0;
+        for (byte[] data : history) {
+            bytes += data.length;
+        }
+        long best = Long.MAX_VALUE;
+        int checksum = 0;
+        for (int r = 0; r < rounds + 1; r += 1) {
+            long start = System.nanoTime();
+            for (int i = history.length - 1; i >= 0; i -= 1) {
+                checksum += Commit.decode(history[i]).getTree().length();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (r > 0) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        double seconds = best / 1e9;
+        System.out.printf("%-10s %8d commits %10d bytes %12.0f commits/s "
+                + "%8.1f MB/s (%d)%n", name, history.length, bytes,
+                history.length / seconds, bytes / seconds / 1e6, checksum);
+    }
+}
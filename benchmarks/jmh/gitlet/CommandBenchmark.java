@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Runs status, add, commit and merge in this JVM on a synthetic
+ *  repository of FILES files spread over ten directories and COMMITS
+ *  commits, each changing one file.  Branch "other" changes one more file
+ *  after the last commit and master another, so merging them is clean.
+ *  Commands keeps the working directory it finds when first used, so every
+ *  benchmark must run in a fork of its own, as JMH does by default.  What
+ *  the commands print is discarded.
+ *  @author Austin Ralleta
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBenchmark {
+
+    /** Number of files in the repository. */
+    @Param({"100", "1000"})
+    public int files;
+
+    /** Number of commits in the repository. */
+    @Param({"10", "100"})
+    public int commits;
+
+    /**
+     * Makes the repository in a temporary directory.
+     * @throws IOException
+     */
+    @Setup(Level.Trial)
+    public void makeRepository() throws IOException {
+        dir = Files.createTempDirectory("gitlet-jmh").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        Main.serving = true;
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Commands.init();
+        for (int i = 0; i < files; i += 1) {
+            change(i);
+        }
+        Commands.add(".");
+        Commands.commit("files");
+        for (int c = 1; c < commits; c += 1) {
+            commitChange(c % files, "commit " + c);
+        }
+        Commands.branch("other");
+        Commands.checkoutBranch("other");
+        commitChange(0, "other");
+        Commands.checkoutBranch("master");
+        commitChange(1 % files, "master");
+        masterHead = Commands.getHead().getCommitId();
+    }
+
+    /**
+     * Deletes the repository.
+     * @throws IOException
+     */
+    @TearDown(Level.Trial)
+    public void deleteRepository() throws IOException {
+        System.setOut(console);
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /** Changes one file before each add. */
+    @State(Scope.Benchmark)
+    public static class Changed {
+        /**
+         * Changes the next file.
+         * @param repo is the repository.
+         */
+        @Setup(Level.Invocation)
+        public void changeFile(CommandBenchmark repo) {
+            repo.change(repo.changes++ % repo.files);
+        }
+    }
+
+    /** Stages one change before each commit. */
+    @State(Scope.Benchmark)
+    public static class Staged {
+        /**
+         * Changes and adds the next file.
+         * @param repo is the repository.
+         * @throws IOException
+         */
+        @Setup(Level.Invocation)
+        public void stageChange(CommandBenchmark repo) throws IOException {
+            int i = repo.changes++ % repo.files;
+            repo.change(i);
+            Commands.add(name(i));
+        }
+    }
+
+    /** Moves master back to its head before the merge, before each merge. */
+    @State(Scope.Benchmark)
+    public static class Unmerged {
+        /**
+         * Resets master.
+         * @param repo is the repository.
+         * @throws IOException
+         */
+        @Setup(Level.Invocation)
+        public void undoMerge(CommandBenchmark repo) throws IOException {
+            Commands.reset(repo.masterHead);
+        }
+    }
+
+    /** Lists the state of the repository. */
+    @Benchmark
+    public void status() {
+        Commands.status();
+    }
+
+    /**
+     * Adds the whole working tree, in which one file changed.
+     * @param changed is the changed file.
+     * @throws IOException
+     */
+    @Benchmark
+    public void add(Changed changed) throws IOException {
+        Commands.add(".");
+    }
+
+    /**
+     * Commits one staged change.
+     * @param staged is the staged change.
+     * @throws IOException
+     */
+    @Benchmark
+    public void commit(Staged staged) throws IOException {
+        Commands.commit("change " + changes);
+    }
+
+    /**
+     * Merges other into master.
+     * @param unmerged is master before the merge.
+     * @throws IOException
+     */
+    @Benchmark
+    public void merge(Unmerged unmerged) throws IOException {
+        Commands.merge("other");
+    }
+
+    /**
+     * Changes a file, adds it and commits it.
+     * @param i is the number of the file.
+     * @param message is the commit message.
+     * @throws IOException
+     */
+    private void commitChange(int i, String message) throws IOException {
+        change(i);
+        Commands.add(name(i));
+        Commands.commit(message);
+    }
+
+    /**
+     * Writes new contents to a file.
+     * @param i is the number of the file.
+     */
+    void change(int i) {
+        File file = Utils.join(dir, name(i));
+        file.getParentFile().mkdirs();
+        Utils.writeContents(file, "file " + i + " version "
+                + System.nanoTime() + "\n");
+    }
+
+    /**
+     * Gets the name of a file.
+     * @param i is the number of the file.
+     * @return its path relative to the working directory.
+     */
+    private static String name(int i) {
+        return "d" + (i % 10) + "/f" + i + ".txt";
+    }
+
+    /** The working directory of the repository. */
+    private File dir;
+
+    /** Standard output before the benchmark discarded it. */
+    private PrintStream console;
+
+    /** Id of the master head before any merge. */
+    private String masterHead;
+
+    /** Number of file changes made so far. */
+    private int changes;
+}
@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Round trips of a commit and a merge commit through the binary commit
+ *  format, and decoding alone, which is what history walks pay for.
+ *  @author Austin Ralleta
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitRoundTripBenchmark {
+
+    /** Makes the commits. */
+    @Setup
+    public void makeCommits() {
+        Commit parent = new Commit("Thu Jan 01 00:00:00 1970 +0000",
+                "initial commit");
+        commit = new Commit("a commit message of ordinary length",
+                Utils.sha1("tree"), parent.getCommitId(), "master");
+        merge = new Commit("Merged other into master.", Utils.sha1("merged"),
+                commit.getCommitId(), parent.getCommitId(), "master");
+        encoded = commit.encode();
+    }
+
+    /**
+     * Encodes and decodes a commit.
+     * @return the decoded commit.
+     */
+    @Benchmark
+    public Commit roundTrip() {
+        return Commit.decode(commit.encode());
+    }
+
+    /**
+     * Encodes and decodes a merge commit.
+     * @return the decoded commit.
+     */
+    @Benchmark
+    public Commit mergeRoundTrip() {
+        return Commit.decode(merge.encode());
+    }
+
+    /**
+     * Decodes a commit.
+     * @return the decoded commit.
+     */
+    @Benchmark
+    public Commit decode() {
+        return Commit.decode(encoded);
+    }
+
+    /** A commit with one parent. */
+    private Commit commit;
+
+    /** A commit with two parents. */
+    private Commit merge;
+
+    /** The encoding of COMMIT. */
+    private byte[] encoded;
+}
@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Hashes blobs of several sizes with Utils.sha1, from the size of a
+ *  small source file up to a large binary.
+ *  @author Austin Ralleta
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Sha1Benchmark {
+
+    /** Size of the hashed contents in bytes. */
+    @Param({"64", "4096", "65536", "1048576"})
+    public int size;
+
+    /** Makes the contents to hash. */
+    @Setup
+    public void makeContents() {
+        contents = new byte[size];
+        new Random(size).nextBytes(contents);
+    }
+
+    /**
+     * Hashes the contents.
+     * @return the SHA-1.
+     */
+    @Benchmark
+    public String sha1() {
+        return Utils.sha1((Object) contents);
+    }
+
+    /** The contents to hash. */
+    private byte[] contents;
+}
@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Finds the split point of two branches on a synthetic commit graph, the
+ *  walk merge does before it looks at any file.  A deep history is two
+ *  branches of LENGTH commits each that diverged at the initial commit.
+ *  A wide history is LENGTH side branches of one commit each, merged one
+ *  after another into master, with the other branch growing from the
+ *  first side branch, so the walk from master must pass every merge.
+ *  @author Austin Ralleta
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitPointBenchmark {
+
+    /** Shape of the history: "deep" or "wide". */
+    @Param({"deep", "wide"})
+    public String shape;
+
+    /** Number of commits on each branch, or of side branches. */
+    @Param({"100", "10000"})
+    public int length;
+
+    /**
+     * Writes the commit graph of the history.
+     * @throws IOException
+     */
+    @Setup
+    public void makeGraph() throws IOException {
+        List<Commit> commits = new ArrayList<>();
+        Commit initial = new Commit("Thu Jan 01 00:00:00 1970 +0000",
+                "initial commit");
+        commits.add(initial);
+        String master;
+        String other;
+        if (shape.equals("deep")) {
+            String root = initial.getCommitId();
+            master = chain(commits, root, "master", length);
+            other = chain(commits, root, "other", length);
+        } else {
+            master = initial.getCommitId();
+            String first = null;
+            for (int i = 0; i < length; i += 1) {
+                String side = chain(commits, initial.getCommitId(),
+                        "side" + i, 1);
+                if (first == null) {
+                    first = side;
+                }
+                Commit merge = new Commit("merge " + i, Utils.sha1("m" + i),
+                        master, side, "master");
+                commits.add(merge);
+                master = merge.getCommitId();
+            }
+            other = chain(commits, first, "other", 1);
+        }
+        file = Files.createTempFile("gitlet-graph", "").toFile();
+        CommitGraph.write(file, commits);
+        graph = new CommitGraph(file);
+        one = graph.find(master);
+        two = graph.find(other);
+    }
+
+    /** Deletes the commit graph. */
+    @TearDown
+    public void deleteGraph() {
+        file.delete();
+    }
+
+    /**
+     * Finds the split point.
+     * @return its row.
+     */
+    @Benchmark
+    public int splitPoint() {
+        return new MergeBase(graph).base(one, two);
+    }
+
+    /**
+     * Adds a line of commits to a history.
+     * @param commits is the history, to which the commits are added.
+     * @param parent is the id of the first commit's parent.
+     * @param branch is the name of the branch.
+     * @param count is the number of commits.
+     * @return the id of the last commit.
+     */
+    private static String chain(List<Commit> commits, String parent,
+                                String branch, int count) {
+        for (int i = 0; i < count; i += 1) {
+            Commit commit = new Commit(branch + " " + i,
+                    Utils.sha1(branch, "" + i), parent, branch);
+            commits.add(commit);
+            parent = commit.getCommitId();
+        }
+        return parent;
+    }
+
+    /** The commit graph file. */
+    private File file;
+
+    /** The commit graph. */
+    private CommitGraph graph;
+
+    /** Row of the master head. */
+    private int one;
+
+    /** Row of the other head. */
+    private int two;
+}
@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** The client side of the command server, kept apart from Server so that
+ *  a command that finds no server loads nothing else.  A client sends the
+ *  number of arguments and each argument, and reads back frames: a kind
+ *  byte, a length and that many bytes of standard output or standard
+ *  error, until an EXIT frame holding the exit status.
+ *  @author Austin Ralleta
+ */
+class Client {
+
+    /**
+     * Runs a command in the server of a working directory, copying what
+     * it prints to standard output and standard error.
+     * @param workDir is the working directory.
+     * @param args is the command and its operands.
+     * @return the exit status of the command, or -1 if no server is
+     *         running.
+     */
+    static int forward(File workDir, String... args) {
+        File socket = socket(workDir);
+        if (!socket.exists()) {
+            return -1;
+        }
+        SocketChannel server;
+        try {
+            server = SocketChannel.open(
+                    UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            return -1;
+        }
+        try (server) {
+            DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(server)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            DataInputStream frames = new DataInputStream(
+                    Channels.newInputStream(server));
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (true) {
+                int kind = frames.readByte();
+                if (kind == EXIT) {
+                    return frames.readInt();
+                }
+                int length = frames.readInt();
+                if (length > buf.length) {
+                    buf = new byte[length];
+                }
+                frames.readFully(buf, 0, length);
+                (kind == OUT ? System.out : System.err).write(buf, 0,
+                        length);
+                (kind == OUT ? System.out : System.err).flush();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Determine if a server is running for a working directory.
+     * @param workDir is the working directory.
+     * @return true if its socket accepts connections.
+     */
+    static boolean isRunning(File workDir) {
+        File socket = socket(workDir);
+        if (!socket.exists()) {
+            return false;
+        }
+        try (SocketChannel server = SocketChannel.open(
+                UnixDomainSocketAddress.of(socket.toPath()))) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the socket of the server of a working directory.
+     * @param workDir is the working directory.
+     * @return the socket file.
+     */
+    static File socket(File workDir) {
+        return Utils.join(workDir, ".gitlet", SOCKET);
+    }
+
+    /** Frame kind of standard output. */
+    static final int OUT = 1;
+
+    /** Frame kind of standard error. */
+    static final int ERR = 2;
+
+    /** Frame kind of the exit status, the last frame. */
+    static final int EXIT = 3;
+
+    /** Name of the socket in .gitlet. */
+    private static final String SOCKET = "server";
+
+    /** Size of the buffer frames are read into. */
+    private static final int BUFFER_SIZE = 1 << 13;
+}
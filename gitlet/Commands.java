@@ -1,14 +1,28 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.HashMap;
-import java.util.Set;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 /** Commmand class of all gitlet command methods called in Main.
  *  @author Austin Ralleta
@@ -22,30 +36,15 @@ public class Commands {
         if (!Utils.join(System.getProperty("user.dir"), ".gitlet").exists()) {
             File dotGitlet = new File(workDir + File.separator + ".gitlet");
             dotGitlet.mkdir();
-            File stage = Utils.join(workDir, ".gitlet", "stage");
-            stage.mkdir();
-            File allStaged = Utils.join(stage, "staged");
-            allStaged.createNewFile();
-            Utils.writeObject(allStaged, staged);
-            File tracked = Utils.join(dotGitlet, "tracked");
-            tracked.createNewFile();
-            Utils.writeObject(tracked, track);
+            writeIndex();
             File commits = Utils.join(dotGitlet, "commits");
             commits.mkdir();
             File blobs = Utils.join(dotGitlet, "blobs");
             blobs.mkdir();
-            File removal = Utils.join(dotGitlet, "removal");
-            removal.mkdir();
-            File allRemoved = Utils.join(removal, "removed");
-            allRemoved.createNewFile();
-            Utils.writeObject(allRemoved, markRemoved);
+            new Tree().write(objects());
             Commit initCommit = new Commit("Wed Dec 31 16:00:00 1969 -0800",
                     "initial commit");
             File firstCommit = Utils.join(commits, initCommit.getCommitId());
-            commitsMap.put(initCommit.getCommitId(), initCommit.getMessage());
-            File allCommits = Utils.join(commits, "hashes");
-            allCommits.createNewFile();
-            Utils.writeObject(allCommits, commitsMap);
             File branches = Utils.join(dotGitlet, "branches");
             branches.mkdir();
             File master = Utils.join(branches, "master");
@@ -58,7 +57,11 @@ public class Commands {
             File current = Utils.join(dotGitlet, "HEAD");
             current.createNewFile();
             Utils.writeContents(current, head);
-            Utils.writeObject(firstCommit, initCommit);
+            initCommit.write(firstCommit);
+            CommitGraph.write(Utils.join(dotGitlet, "commit-graph"),
+                    List.of(initCommit));
+            Utils.writeContents(Utils.join(dotGitlet, "version"),
+                    String.valueOf(Upgrade.CURRENT));
         } else {
             System.out.println("A Gitlet version-control system "
                     + "already exists in the current directory.");
@@ -70,51 +73,42 @@ public class Commands {
      * @return the current commit.
      */
     public static Commit getHead() {
-        String theHead = Utils.readContentsAsString(Utils.join(workDir,
-                ".gitlet", "HEAD"));
-        File currentCommit = Utils.join(workDir, ".gitlet",
-                "commits", theHead);
-        return Utils.readObject(currentCommit, Commit.class);
+        return getCommit(Utils.readContentsAsString(Utils.join(workDir,
+                ".gitlet", "HEAD")));
     }
 
     /**
-     * Gets hashmap of currently staged files.
-     * @return hashmap of staged.
+     * Gets the index, reading it on first use.
+     * @return the index.
      */
-    @SuppressWarnings("unchecked")
-    public static HashMap<String, String> getStaged() {
-        File allStaged = Utils.join(workDir, ".gitlet", "stage", "staged");
-        return Utils.readObject(allStaged, HashMap.class);
+    static Index index() {
+        if (theIndex == null) {
+            theIndex = Index.read(Utils.join(workDir, ".gitlet", "index"));
+        }
+        return theIndex;
     }
 
     /**
-     * Get currently tracked files.
-     * @return hashmap of tracked files.
+     * Writes the index back to .gitlet/index.
      */
-    @SuppressWarnings("unchecked")
-    public static HashMap<String, String> tracked() {
-        File tracked = Utils.join(workDir, ".gitlet", "tracked");
-        return Utils.readObject(tracked, HashMap.class);
+    static void writeIndex() {
+        index().write(Utils.join(workDir, ".gitlet", "index"));
     }
 
     /**
-     * Gets map of files currently marked removed.
-     * @return hashmap of removed files.
+     * Gets hashmap of currently staged files.
+     * @return hashmap of staged.
      */
-    @SuppressWarnings("unchecked")
-    public static HashMap<String, String> getMarkRemoved() {
-        File allRemoved = Utils.join(workDir, ".gitlet", "removal", "removed");
-        return Utils.readObject(allRemoved, HashMap.class);
+    public static HashMap<String, String> getStaged() {
+        return index().staged();
     }
 
     /**
-     * Gets map of all commit SHA-1.
-     * @return hashmap of all commits.
+     * Gets map of files currently marked removed.
+     * @return hashmap of removed files.
      */
-    @SuppressWarnings("unchecked")
-    public static HashMap<String, String> getCommitHashes() {
-        File allCommits = Utils.join(workDir, ".gitlet", "commits", "hashes");
-        return Utils.readObject(allCommits, HashMap.class);
+    public static HashMap<String, String> getMarkRemoved() {
+        return index().removed();
     }
 
     /**
@@ -135,78 +129,183 @@ public class Commands {
         return Utils.readContentsAsString(myBranch);
     }
 
+    /**
+     * Gets the object store holding blobs.
+     * @return the object store, opened on first use.
+     */
+    static ObjectDatabase objects() {
+        if (objectDatabase == null) {
+            objectDatabase = new ObjectDatabase(Utils.join(workDir,
+                    ".gitlet"));
+        }
+        return objectDatabase;
+    }
+
+    /**
+     * Gets the commit graph.
+     * @return the commit graph, opened on first use.
+     */
+    static CommitGraph graph() {
+        if (commitGraph == null) {
+            commitGraph = new CommitGraph(Utils.join(workDir, ".gitlet",
+                    "commit-graph"));
+        }
+        return commitGraph;
+    }
+
+    /**
+     * Gets the commit log.
+     * @return the commit log, which may lack the newest commits.
+     */
+    static CommitLog commitLog() {
+        return new CommitLog(Utils.join(workDir, ".gitlet", "commit-log"));
+    }
+
+    /**
+     * Gets the index of commit messages, which reads the messages of any
+     * commits it has not indexed yet.
+     * @return the message index.
+     */
+    static MessageIndex messages() {
+        return new MessageIndex(Utils.join(workDir, ".gitlet", "messages"),
+                graph(), row -> getCommit(graph().id(row)).getMessage());
+    }
+
+    /**
+     * Finds the commit whose id is or starts with the id given to a
+     * command, exiting if there is none or more than one.
+     * @param id is the full or abbreviated commit id.
+     * @return the full commit id.
+     */
+    static String resolveCommit(String id) {
+        int row = graph().resolve(id);
+        if (row == CommitIndex.AMBIGUOUS) {
+            System.out.println("Ambiguous commit id.");
+            Main.exit(0);
+        } else if (row < 0) {
+            System.out.println("No commit with that id exists.");
+            Main.exit(0);
+        }
+        return graph().id(row);
+    }
+
     /**
      * Gets the blob.
      * @param blobHash is the SHA-1 of the file.
-     * @return the blob with file contents.
+     * @return the file contents stored in the blob.
      */
-    public static File getBlob(String blobHash) {
-        return Utils.join(workDir, ".gitlet", "blobs", blobHash);
+    public static byte[] getBlob(String blobHash) {
+        return objects().read(blobHash);
     }
 
     /**
-     * Gets the commit.
+     * Gets the commit, from the commit cache if it was read before.
      * @param id is the SHA-1 of the commit.
      * @return the commit object.
      */
     public static Commit getCommit(String id) {
-        File commitID = Utils.join(workDir, ".gitlet", "commits", id);
-        return Utils.readObject(commitID, Commit.class);
+        Commit result = ObjectCache.COMMITS.get(id);
+        if (result == null) {
+            result = Commit.read(Utils.join(workDir, ".gitlet", "commits",
+                    id));
+            ObjectCache.COMMITS.put(id, result, result.weight());
+        }
+        return result;
     }
 
     /**
-     * Adds the current copy of the file to the staging area.
-     * @param file to be added to stage
+     * Adds the current copies of files to the staging area.  Directories
+     * add every file under them, and "." adds the whole working tree.
+     * Files are hashed and stored in parallel when there are enough of
+     * them, and the index is written once at the end.
+     * @param paths is the names of the files and directories to be added.
      */
-    public static void add(String file) throws IOException {
-        if (!Utils.join(System.getProperty("user.dir"), file).exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
-        } else {
-            File copy = new File(workDir + File.separator + file);
-            byte[] content = Utils.readContents(copy);
-            String blobHash = Utils.sha1(content);
-            String currVersion = getHead().getTracked().get(file);
-            HashMap<String, String> currentStaged = getStaged();
-            HashMap<String, String> currMarkedRemoved = getMarkRemoved();
-            if (currMarkedRemoved.containsKey(file)) {
-                currMarkedRemoved.remove(file);
-                Utils.writeObject(Utils.join(workDir, ".gitlet",
-                        "removal", "removed"), currMarkedRemoved);
-                File inRemoval = Utils.join(workDir, ".gitlet", "removal",
-                        file);
-                inRemoval.delete();
+    public static void add(String... paths) throws IOException {
+        TreeSet<String> names = new TreeSet<>();
+        for (String path : paths) {
+            String name = workPath(path);
+            File file = Utils.join(workDir, name);
+            if (name.isEmpty() || file.isDirectory()) {
+                listFiles(file, name.isEmpty() ? "" : name + "/", names);
+            } else if (file.exists()) {
+                names.add(name);
+            } else {
+                System.out.println("File does not exist.");
+                Main.exit(0);
             }
-            if (blobHash.equals(currVersion)) {
-                if (currentStaged.containsKey(file)) {
-                    currentStaged.remove(file);
-                    Utils.writeObject(Utils.join(workDir, ".gitlet", "stage",
-                            "staged"), currentStaged);
-                    File inStage = Utils.join(workDir, ".gitlet", "stage",
-                            file);
-                    inStage.delete();
-                } else {
-                    System.exit(0);
-                }
+        }
+        syncMonitor();
+        List<String> files = new ArrayList<>(names);
+        Index.Entry[] entries = new Index.Entry[files.size()];
+        if (files.size() < PARALLEL_ADDS) {
+            for (int i = 0; i < entries.length; i += 1) {
+                entries[i] = hashForAdd(files.get(i));
+            }
+        } else {
+            IntStream.range(0, entries.length).parallel().forEach(
+                i -> entries[i] = hashForAdd(files.get(i)));
+        }
+        Manifest head = null;
+        if (entries.length > 1) {
+            head = getHead().getManifest();
+        }
+        for (Index.Entry entry : entries) {
+            String currVersion = head != null ? head.get(entry.path)
+                : Tree.lookup(objects(), getHead().getTree(), entry.path);
+            if (!entry.id.equals(currVersion)) {
+                entry.flags |= Index.STAGED;
             }
-            File blobFile = Utils.join(workDir, ".gitlet", "blobs",
-                    blobHash);
-            if (!blobFile.exists()) {
-                blobFile.createNewFile();
-                Utils.writeContents(blobFile, content);
+            index().put(entry);
+        }
+        writeIndex();
+    }
+
+    /**
+     * Stores the blob of a file being added, unless its index entry
+     * vouches for it.  Runs on pool threads, so it only reads the index.
+     * @param file is the name of the file.
+     * @return a new, unstaged entry for the file with the stat data taken
+     *         before hashing.
+     */
+    private static Index.Entry hashForAdd(String file) {
+        File copy = Utils.join(workDir, file);
+        Index.Entry old = index().get(file);
+        boolean valid = old != null && old.isValid();
+        long[] stat;
+        String blobHash;
+        if (valid) {
+            stat = new long[] {old.size, old.mtime, old.inode};
+            blobHash = old.id;
+        } else {
+            stat = Index.stat(copy);
+            if (old != null && stat != null && index().unchanged(old, stat)) {
+                blobHash = old.id;
+            } else {
+                blobHash = objects().insert(copy);
             }
-            currentStaged.put(file, blobHash);
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "stage",
-                    "staged"), currentStaged);
-            File stagedFile = Utils.join(workDir, ".gitlet", "stage",
-                    file);
-            stagedFile.createNewFile();
-            Utils.writeContents(stagedFile, blobHash);
-            HashMap<String, String> currentTracked = tracked();
-            currentTracked.put(file, blobHash);
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "tracked"),
-                    currentTracked);
         }
+        Index.Entry entry = new Index.Entry(file, blobHash,
+                valid ? Index.VALID : 0);
+        entry.setStat(stat);
+        return entry;
+    }
+
+    /**
+     * Turns a path given on the command line into the name of a file
+     * relative to the working directory.
+     * @param path is the path, which may start with "./" or end with '/'.
+     * @return the name, with '/' between directories, or empty for the
+     *         working directory itself.
+     */
+    static String workPath(String path) {
+        String name = path.replace(File.separatorChar, '/');
+        while (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+        while (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        return name.equals(".") ? "" : name;
     }
 
     /**
@@ -214,36 +313,21 @@ public class Commands {
      * @param file is name of file to be removed.
      */
     public static void rm(String file) throws IOException {
-        boolean isTracked = getHead().getTracked().containsKey(file);
-        HashMap<String, String> currentStaged = getStaged();
-        if (!currentStaged.containsKey(file) && !isTracked) {
+        String currVersion = Tree.lookup(objects(), getHead().getTree(),
+                file);
+        Index.Entry entry = index().get(file);
+        boolean isStaged = entry != null && entry.isStaged();
+        if (!isStaged && currVersion == null) {
             System.out.println("No reason to remove the file.");
+            Main.exit(0);
         }
-        File theFile = new File(workDir + File.separator + file);
-        if (currentStaged.containsKey(file)) {
-            currentStaged.remove(file);
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "stage",
-                    "staged"), currentStaged);
-            File inStage = Utils.join(workDir, ".gitlet", "stage", file);
-            inStage.delete();
-        }
-        if (isTracked) {
-            HashMap<String, String> currMarkedRemoved = getMarkRemoved();
-            if (theFile.exists()) {
-                Utils.restrictedDelete(theFile);
-            }
-            String blobHash = tracked().get(file);
-            currMarkedRemoved.put(file, blobHash);
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "removal",
-                    "removed"), currMarkedRemoved);
-            File removedFile = Utils.join(workDir, ".gitlet", "removal", file);
-            removedFile.createNewFile();
-            Utils.writeContents(removedFile, blobHash);
-            HashMap<String, String> currentTracked = tracked();
-            currentTracked.remove(file);
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "tracked"),
-                    currentTracked);
+        if (currVersion == null) {
+            index().remove(file);
+        } else {
+            deleteWorkFile(file);
+            index().put(new Index.Entry(file, currVersion, Index.REMOVED));
         }
+        writeIndex();
     }
 
     /**
@@ -257,94 +341,132 @@ public class Commands {
         HashMap<String, String> currMarkedRemoved = getMarkRemoved();
         if (currentStaged.size() == 0 && currMarkedRemoved.size() == 0) {
             System.out.println("No changes added to the commit.");
-            System.exit(0);
+            Main.exit(0);
         }
-        HashMap<String, String> tracking = tracked();
         File current = Utils.join(workDir, ".gitlet", "HEAD");
         String theHead = Utils.readContentsAsString(current);
+        Transaction tx = transaction();
+        String tree = Tree.update(tx, getCommit(theHead).getTree(),
+                index().changes());
         String myBranchName = getMyBranchName();
-        Commit thisCommit = new Commit(msg, tracking, theHead, myBranchName);
-        Utils.writeContents(current, thisCommit.getCommitId());
-        HashMap<String, String> mapOfCommits = getCommitHashes();
-        mapOfCommits.put(thisCommit.getCommitId(), thisCommit.getMessage());
-        File allCommits = Utils.join(workDir, ".gitlet", "commits", "hashes");
-        Utils.writeObject(allCommits, mapOfCommits);
-        File thisBranch = getBranchFile(myBranchName);
-        Utils.writeContents(thisBranch, thisCommit.getCommitId());
-        File thisCommitFile = Utils.join(workDir, ".gitlet", "commits",
-                thisCommit.getCommitId());
-        thisCommitFile.createNewFile();
-        Utils.writeObject(thisCommitFile, thisCommit);
-        if (currentStaged.size() != 0) {
-            for (String stagedFile : currentStaged.keySet()) {
-                File inStage = Utils.join(workDir, ".gitlet", "stage",
-                        stagedFile);
-                inStage.delete();
-            }
-            currentStaged.clear();
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "stage",
-                    "staged"), currentStaged);
-        }
-        if (currMarkedRemoved.size() != 0) {
-            for (String inRemoval : currMarkedRemoved.keySet()) {
-                File removedFile = Utils.join(workDir, ".gitlet", "removal",
-                        inRemoval);
-                removedFile.delete();
-            }
-            currMarkedRemoved.clear();
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "removal",
-                    "removed"), currMarkedRemoved);
+        Commit thisCommit = new Commit(msg, tree, theHead, myBranchName);
+        writeCommit(tx, thisCommit, myBranchName);
+    }
+
+    /**
+     * Starts a transaction on the repository.
+     * @return the transaction.
+     */
+    static Transaction transaction() {
+        return new Transaction(Utils.join(workDir, ".gitlet"), objects());
+    }
+
+    /**
+     * Writes a new commit and makes it the head of the current branch,
+     * all in one transaction: the staged blobs, the new trees, the commit
+     * file and its row in the commit graph are written and synced first,
+     * and then HEAD, the branch and the cleared index are replaced
+     * together.  The commit log and message index are brought up to date
+     * after.
+     * @param tx is the transaction holding the new trees.
+     * @param thisCommit is the new commit.
+     * @param branch is the name of the current branch.
+     */
+    private static void writeCommit(Transaction tx, Commit thisCommit,
+                                    String branch) {
+        for (String id : getStaged().values()) {
+            tx.sync(objects().looseFile(id));
         }
+        tx.sync(Utils.join(workDir, ".gitlet", "blobs"));
+        String id = thisCommit.getCommitId();
+        tx.create(Utils.join(workDir, ".gitlet", "commits", id),
+                thisCommit.encode());
+        tx.writeObjects();
+        graph().append(thisCommit);
+        tx.sync(Utils.join(workDir, ".gitlet", "commit-graph"));
+        tx.replace(Utils.join(workDir, ".gitlet", "HEAD"),
+                id.getBytes(StandardCharsets.UTF_8));
+        tx.replace(getBranchFile(branch),
+                id.getBytes(StandardCharsets.UTF_8));
+        File indexFile = Utils.join(workDir, ".gitlet", "index");
+        index().committed();
+        index().writeTemporary(Transaction.temporary(indexFile));
+        tx.replace(indexFile);
+        tx.commit();
+        ObjectCache.COMMITS.put(id, thisCommit, thisCommit.weight());
+        commitLog().update(graph(), row -> getCommit(graph().id(row)));
+        messages().update();
     }
 
     /**
      * Displays commit information starting from current head
-     * and going backwards along the commit tree.
+     * and going backwards along the commit tree.  The walk follows first
+     * parents through the commit graph, whose times let it skip commits
+     * and stop without reading their commit files.
+     * @param limit is the most commits to display.
+     * @param since is the time, in seconds since the epoch, of the oldest
+     *              commit to display: the walk stops at the first commit
+     *              made before it.
+     * @param until is the time of the newest commit to display; newer
+     *              commits are skipped.
      */
-    public static void log() {
-        Commit current = getHead();
-        System.out.println("===");
-        System.out.println("commit " + current.getCommitId());
-        System.out.println("Date: " + current.getDateTime());
-        System.out.println(current.getMessage());
-        while (current.getParent() != null) {
-            File nextPath = Utils.join(workDir, ".gitlet",
-                    "commits", current.getParent());
-            current = Utils.readObject(nextPath, Commit.class);
-            System.out.println();
-            System.out.println("===");
-            System.out.println("commit " + current.getCommitId());
+    public static void log(int limit, long since, long until) {
+        CommitGraph history = graph();
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                OUTPUT_BUFFER));
+        int shown = 0;
+        for (int row = history.find(getHead().getCommitId());
+             row >= 0 && shown < limit && history.time(row) >= since;
+             row = history.parent(row)) {
+            if (history.time(row) > until) {
+                continue;
+            }
+            Commit current = getCommit(history.id(row));
+            if (shown > 0) {
+                out.println();
+            }
+            out.println("===");
+            out.println("commit " + current.getCommitId());
             if (current.isMerge()) {
-                System.out.println("Merge: " + current.getParent().substring(
-                        0, 7) + " " + current.getParentTwo().substring(0, 7));
+                out.println("Merge: " + current.getParent().substring(0, 7)
+                        + " " + current.getParentTwo().substring(0, 7));
             }
-            System.out.println("Date: " + current.getDateTime());
-            System.out.println(current.getMessage());
+            out.println("Date: " + current.getDateTime());
+            out.println(current.getMessage());
+            shown += 1;
         }
+        out.flush();
     }
 
     /**
-     * Displays all commit information for all commits, regardless of branch.
+     * Displays all commit information for all commits, regardless of branch,
+     * newest first, streamed from the commit log.
+     * @param byTime is true to order the commits by their times rather
+     *               than by the order they were made in this repository.
      */
-    public static void globalLog() {
-        Set<String> idSet = getCommitHashes().keySet();
-        int count = 0;
-        for (String id: idSet) {
-            File currentPath = Utils.join(workDir, ".gitlet", "commits", id);
-            Commit current = Utils.readObject(currentPath, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + current.getCommitId());
-            if (current.isMerge()) {
-                System.out.println("Merge: " + current.getParent().substring(
-                        0, 7) + " " + current.getParentTwo().substring(0, 7));
+    public static void globalLog(boolean byTime) {
+        CommitLog commits = commitLog();
+        commits.update(graph(), row -> getCommit(graph().id(row)));
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                OUTPUT_BUFFER));
+        boolean[] first = {true};
+        commits.read(byTime, entry -> {
+            if (!first[0]) {
+                out.println();
             }
-            System.out.println("Date: " + current.getDateTime());
-            System.out.println(current.getMessage());
-            count++;
-            if (count < idSet.size()) {
-                System.out.println();
+            first[0] = false;
+            out.println("===");
+            out.println("commit " + entry.id);
+            if (entry.parentTwo != null) {
+                out.println("Merge: " + entry.parent.substring(0, 7) + " "
+                        + entry.parentTwo.substring(0, 7));
             }
-        }
+            out.println("Date: " + entry.date);
+            out.println(entry.message);
+        });
+        out.flush();
     }
 
     /**
@@ -352,11 +474,12 @@ public class Commands {
      * @param message is the commit message
      */
     public static void find(String message) {
-        HashMap<String, String> mapOfCommits = getCommitHashes();
+        CommitGraph history = graph();
         int idCount = 0;
-        for (HashMap.Entry entry: mapOfCommits.entrySet()) {
-            if (message.equals(entry.getValue())) {
-                System.out.println(entry.getKey());
+        for (int row : messages().exact(message)) {
+            String id = history.id(row);
+            if (message.equals(getCommit(id).getMessage())) {
+                System.out.println(id);
                 idCount++;
             }
         }
@@ -365,16 +488,34 @@ public class Commands {
         }
     }
 
+    /**
+     * Print commit ids of commits whose messages have every word of a
+     * query, ignoring case.  A word ending in * matches any word that
+     * starts with it.
+     * @param query is the words to look for.
+     */
+    public static void findWords(String query) {
+        CommitGraph history = graph();
+        int[] rows = messages().search(query);
+        for (int row : rows) {
+            System.out.println(history.id(row));
+        }
+        if (rows.length == 0) {
+            System.out.println("Found no commit with that message.");
+        }
+    }
+
     /**
      * Displays current existence of branches, staged files, removed files,
      * modifications not staged for commit, and untracked files.
      */
     public static void status() {
         System.out.println("=== Branches ===");
-        List<String> branchesList = Utils.plainFilenamesIn(dBranches);
+        List<String> branchesList = Utils.plainFilenamesIn(
+                Utils.join(workDir, ".gitlet", "branches"));
         if (branchesList != null) {
+            String currentBranch = getMyBranchName();
             for (String branch: branchesList) {
-                String currentBranch = getMyBranchName();
                 if (branch.equals(currentBranch)) {
                     System.out.println("*" + branch);
                 } else {
@@ -384,40 +525,43 @@ public class Commands {
         }
         System.out.println();
         System.out.println("=== Staged Files ===");
-        List<String> stagedList = Utils.plainFilenamesIn(Utils.join(workDir,
-                ".gitlet", "stage"));
+        syncMonitor();
         HashMap<String, String> currentStaged = getStaged();
-        if (stagedList != null) {
-            for (String stagedFile: stagedList) {
-                if (!stagedFile.equals("staged")) {
-                    System.out.println(stagedFile);
-                    File wdStagedPath = Utils.join(workDir, stagedFile);
-                    if (!wdStagedPath.exists()) {
-                        modsNotStaged.add(stagedFile);
-                    } else {
-                        byte[] content = Utils.readContents(wdStagedPath);
-                        String wdStagedHash = Utils.sha1(content);
-                        if (!currentStaged.get(stagedFile).equals(
-                                wdStagedHash)) {
-                            modsNotStaged.add(stagedFile);
-                        }
-                    }
+        Manifest tracking = getHead().getManifest();
+        ArrayList<String> modsNotStaged = new ArrayList<>();
+        ArrayList<String> untracked = new ArrayList<>();
+        WorkTreeScan scan = new WorkTreeScan(index(), new File(workDir));
+        for (Index.Entry entry: index().entries()) {
+            if (entry.isStaged()) {
+                scan.check(entry.path, entry.id);
+            }
+        }
+        for (int i = 0; i < tracking.size(); i += 1) {
+            if (!currentStaged.containsKey(tracking.path(i))) {
+                scan.check(tracking, i);
+            }
+        }
+        if (scan.run(monitored)) {
+            indexDirty = true;
+        }
+        for (Index.Entry entry: index().entries()) {
+            if (entry.isStaged()) {
+                System.out.println(entry.path);
+                if (!scan.clean(entry.path)) {
+                    modsNotStaged.add(entry.path);
                 }
             }
         }
         System.out.println();
         System.out.println("=== Removed Files ===");
-        List<String> removedList = Utils.plainFilenamesIn(Utils.join(workDir,
-                ".gitlet", "removal"));
-        if (removedList != null) {
-            for (String removedFile: removedList) {
-                if (!removedFile.equals("removed")) {
-                    System.out.println(removedFile);
-                }
+        for (Index.Entry entry: index().entries()) {
+            if (entry.isRemoved()) {
+                System.out.println(entry.path);
             }
         }
         System.out.println();
-        statusExtra(currentStaged);
+        statusExtra(currentStaged, tracking, scan, modsNotStaged,
+                untracked);
         System.out.println("=== Modifications Not Staged For Commit ===");
         Collections.sort(modsNotStaged);
         for (String modFile: modsNotStaged) {
@@ -428,42 +572,164 @@ public class Commands {
         for (String notTracked: untracked) {
             System.out.println(notTracked);
         }
+        if (indexDirty) {
+            writeIndex();
+        }
     }
 
     /**
      * Helper method for status to get modifications not staged and untracked.
      * @param currentStaged is hashmap of staged files.
+     * @param tracking is the files tracked by the head commit.
+     * @param scan is the finished check of staged and tracked files.
+     * @param modsNotStaged collects the modifications not staged.
+     * @param untracked collects the untracked files.
      */
-    public static void statusExtra(HashMap<String, String> currentStaged) {
-        List<String> workDirFiles = Utils.plainFilenamesIn(new File(workDir));
-        Commit myCommit = getHead();
-        HashMap<String, String> tracking = myCommit.getTracked();
+    public static void statusExtra(HashMap<String, String> currentStaged,
+                                   Manifest tracking, WorkTreeScan scan,
+                                   List<String> modsNotStaged,
+                                   List<String> untracked) {
         HashMap<String, String> currMarkedRemoved = getMarkRemoved();
-        for (String trackedFile: tracking.keySet()) {
-            File wdTrackedPath = Utils.join(workDir, trackedFile);
+        for (int i = 0; i < tracking.size(); i += 1) {
+            String trackedFile = tracking.path(i);
+            boolean exists = scan.exists(trackedFile);
             if (!currMarkedRemoved.containsKey(trackedFile)) {
-                if (!wdTrackedPath.exists()) {
+                if (!exists) {
                     modsNotStaged.add(trackedFile + " (deleted)");
                 }
             }
-            if (wdTrackedPath.exists()) {
+            if (exists) {
                 if (!currentStaged.containsKey(trackedFile)) {
-                    String trackHash = tracking.get(trackedFile);
-                    if (!Arrays.equals(Utils.readContents(getBlob(trackHash)),
-                            Utils.readContents(wdTrackedPath))) {
+                    if (!scan.clean(trackedFile)) {
                         modsNotStaged.add(trackedFile + " (modified)");
                     }
                 }
             }
         }
-        if (workDirFiles != null) {
-            for (String wdFile : workDirFiles) {
-                if (!currentStaged.containsKey(wdFile)
-                        && !tracking.containsKey(wdFile)) {
-                    untracked.add(wdFile);
+        TreeSet<String> others = index().untracked();
+        if (others == null) {
+            others = new TreeSet<>();
+            for (String wdFile : workFiles()) {
+                if (index().get(wdFile) == null) {
+                    others.add(wdFile);
+                }
+            }
+            if (monitored) {
+                index().setUntracked(others);
+                indexDirty = true;
+            }
+        }
+        for (String wdFile : others) {
+            if (!currentStaged.containsKey(wdFile)
+                    && !tracking.contains(wdFile)) {
+                untracked.add(wdFile);
+            }
+        }
+    }
+
+    /**
+     * Brings the index up to date with the file-system monitor.  Entries
+     * of files that changed since the index's monitor token lose their
+     * VALID flags and the untracked files are updated, so that only those
+     * files need to be examined.  When no monitor is running, or it cannot
+     * tell what changed, everything learned from it is forgotten.
+     */
+    static void syncMonitor() {
+        Index index = index();
+        Monitor.Changes changes = Monitor.query(new File(workDir),
+                index.token());
+        if (changes == null || changes.changed == null) {
+            if (index.token() != null) {
+                index.forgetMonitor();
+                indexDirty = true;
+            }
+            if (changes == null) {
+                return;
+            }
+        } else {
+            for (String name : changes.changed) {
+                Index.Entry entry = index.get(name);
+                if (entry != null) {
+                    entry.flags &= ~Index.VALID;
+                } else if (index.untracked() != null) {
+                    if (Utils.join(workDir, name).isFile()) {
+                        index.untracked().add(name);
+                    } else {
+                        index.untracked().remove(name);
+                    }
                 }
             }
         }
+        index.setToken(changes.token);
+        monitored = true;
+        indexDirty = true;
+    }
+
+    /**
+     * Starts, stops or runs the file-system monitor.
+     * @param action is start, stop or run.
+     */
+    public static void monitor(String action) {
+        switch (action) {
+        case "start":
+            Monitor.start(new File(workDir));
+            break;
+        case "stop":
+            Monitor.stop(new File(workDir));
+            break;
+        case "run":
+            Monitor.run(new File(workDir));
+            break;
+        default:
+            System.out.println("Incorrect Operands");
+            Main.exit(0);
+        }
+    }
+
+    /**
+     * Starts, stops or runs the command server of the working directory.
+     * @param action is "start", "stop" or "run".
+     */
+    public static void serve(String action) {
+        switch (action) {
+        case "start":
+            Server.start(new File(workDir));
+            break;
+        case "stop":
+            Server.stop(new File(workDir));
+            break;
+        case "run":
+            Main.serving = true;
+            Server.run(new File(workDir));
+            break;
+        default:
+            System.out.println("Incorrect Operands");
+            Main.exit(0);
+        }
+    }
+
+    /**
+     * Forgets what the last command found, so that a server can run the
+     * next one in the same process.  The index, object store and commit
+     * graph stay open if the last command ran to its end and their files
+     * have not changed since.
+     * @param keep is false if the last command ended early, which may have
+     *             left the open index half changed.
+     */
+    static void forgetState(boolean keep) {
+        aConflict = false;
+        indexDirty = false;
+        monitored = false;
+        if (!keep || theIndex != null && !theIndex.isCurrent(
+                Utils.join(workDir, ".gitlet", "index"))) {
+            theIndex = null;
+        }
+        if (!keep || commitGraph != null && !commitGraph.isCurrent()) {
+            commitGraph = null;
+        }
+        if (!keep) {
+            objectDatabase = null;
+        }
     }
 
     /**
@@ -474,7 +740,7 @@ public class Commands {
         File theBranch = Utils.join(workDir, ".gitlet", "branches", name);
         if (theBranch.exists()) {
             System.out.println("A branch with that name already exists.");
-            System.exit(0);
+            Main.exit(0);
         } else {
             Utils.writeContents(theBranch, Utils.readContentsAsString(
                     Utils.join(workDir, ".gitlet", "HEAD")));
@@ -488,12 +754,12 @@ public class Commands {
     public static void rmbranch(String name) {
         if (name.equals(getMyBranchName())) {
             System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            Main.exit(0);
         }
         File theBranch = Utils.join(workDir, ".gitlet", "branches", name);
         if (!theBranch.exists()) {
             System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            Main.exit(0);
         } else {
             theBranch.delete();
         }
@@ -511,31 +777,20 @@ public class Commands {
 
     /**
      * Takes file from given commit and overwrites file in working directory.
-     * @param id is commit id.
+     * @param id is commit id, or any unique prefix of it.
      * @param fileName is name of file.
      */
     public static void checkoutWithin(String id, String fileName)
             throws IOException {
-        if (!Utils.join(workDir, ".gitlet", "commits", id).exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        Commit given = getCommit(id);
-        HashMap<String, String> inGiven = given.getTracked();
-        if (!inGiven.containsKey(fileName)) {
+        Commit given = getCommit(resolveCommit(id));
+        String version = Tree.lookup(objects(), given.getTree(), fileName);
+        if (version == null) {
             System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            Main.exit(0);
         }
-        String version = inGiven.get(fileName);
-        byte[] versionContent = Utils.readContents(Utils.join(workDir,
-                ".gitlet", "blobs", version));
         File wdFilePath = Utils.join(workDir, fileName);
-        if (wdFilePath.exists()) {
-            Utils.writeContents(wdFilePath, versionContent);
-        } else {
-            wdFilePath.createNewFile();
-            Utils.writeContents(wdFilePath, versionContent);
-        }
+        wdFilePath.getParentFile().mkdirs();
+        objects().copyTo(version, wdFilePath);
     }
 
     /**
@@ -547,192 +802,303 @@ public class Commands {
         File branchPath = getBranchFile(branchName);
         if (!branchPath.exists()) {
             System.out.println("No such branch exists.");
-            System.exit(0);
+            Main.exit(0);
         }
         if (branchName.equals(getMyBranchName())) {
             System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            Main.exit(0);
         }
         Commit given = getCommit(Utils.readContentsAsString(branchPath));
-        HashMap<String, String> inGiven = given.getTracked();
-        Utils.writeObject(Utils.join(workDir, ".gitlet", "tracked"),
-                inGiven);
         String branchCommitID = Utils.readContentsAsString(
                 getBranchFile(getMyBranchName()));
         Commit currBranchCommit = getCommit(branchCommitID);
-        HashMap<String, String> currentTracked = currBranchCommit.getTracked();
-        Set<String> inGivenFiles = inGiven.keySet();
-        for (String givenFile: inGivenFiles) {
-            if (Utils.join(workDir, givenFile).exists()
-                    && !currentTracked.containsKey(givenFile)) {
-                System.out.println("There is an untracked file in the way;"
-                        + " delete it or add it first.");
-                System.exit(0);
+        checkoutCommit(currBranchCommit, given);
+        Utils.writeContents(Utils.join(workDir, ".gitlet", "currentbranch"),
+                branchName);
+        Utils.writeContents(Utils.join(workDir, ".gitlet", "HEAD"),
+                Utils.readContents(branchPath));
+        writeIndex();
+    }
+
+    /**
+     * Makes the working directory and the index match a commit.  Only
+     * files whose blob differs between the current and the given commit
+     * are written or deleted, found by comparing their trees, so whole
+     * directories that did not change are skipped; files staged in the
+     * index are put back as the given commit has them.  Files are deleted
+     * before any are written, so a file can replace a directory and a
+     * directory can replace a file.
+     * @param current is the current commit.
+     * @param given is the commit to check out.
+     */
+    public static void checkoutCommit(Commit current, Commit given) {
+        ObjectDatabase store = objects();
+        TreeMap<String, String[]> diff = Tree.diff(store, current.getTree(),
+                given.getTree());
+        HashMap<String, String> changes = new HashMap<>();
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String[]> file : diff.entrySet()) {
+            String name = file.getKey();
+            String givenHash = file.getValue()[1];
+            if (givenHash != null) {
+                if (file.getValue()[0] == null && inTheWay(name, diff)) {
+                    System.out.println("There is an untracked file in the "
+                            + "way; delete it or add it first.");
+                    Main.exit(0);
+                }
+                changed.add(name);
             }
+            changes.put(name, givenHash);
         }
-        for (String givenFile: inGivenFiles) {
-            File givenFilePath = Utils.join(workDir, givenFile);
-            String givenHash = inGiven.get(givenFile);
-            byte[] givenContent = Utils.readContents(Utils.join(workDir,
-                    ".gitlet", "blobs", givenHash));
-            if (givenFilePath.exists()) {
-                Utils.writeContents(givenFilePath, givenContent);
-            } else {
-                givenFilePath.createNewFile();
-                Utils.writeContents(givenFilePath, givenContent);
+        for (Index.Entry entry : index().entries()) {
+            if ((entry.isStaged() || entry.isRemoved())
+                    && !changes.containsKey(entry.path)) {
+                changes.put(entry.path,
+                        Tree.lookup(store, given.getTree(), entry.path));
             }
         }
-        for (String currTrackFile: currentTracked.keySet()) {
-            if (!inGiven.containsKey(currTrackFile)) {
-                Utils.restrictedDelete(Utils.join(workDir, currTrackFile));
+        for (Map.Entry<String, String[]> file : diff.entrySet()) {
+            if (file.getValue()[1] == null) {
+                deleteWorkFile(file.getKey());
             }
         }
-        Utils.writeContents(Utils.join(workDir, ".gitlet", "currentbranch"),
-                branchName);
-        Utils.writeContents(Utils.join(workDir, ".gitlet", "HEAD"),
-                Utils.readContents(branchPath));
-        clearStagingArea();
+        writeFiles(changed, changes);
+        index().checkedOut(changes, new HashSet<>(changed),
+                new File(workDir));
     }
 
     /**
-     * Clears the staging area.
+     * Writes files of the working directory from their blobs, on a pool
+     * of at most WRITERS threads when there are enough of them.
+     * @param files is the names of the files.
+     * @param blobs is a map of file names to blob ids.
      */
-    public static void clearStagingArea() {
-        HashMap<String, String> currentStaged = getStaged();
-        HashMap<String, String> currMarkedRemoved = getMarkRemoved();
-        if (currentStaged.size() != 0) {
-            for (String stagedFile : currentStaged.keySet()) {
-                File inStage = Utils.join(workDir, ".gitlet", "stage",
-                        stagedFile);
-                inStage.delete();
+    public static void writeFiles(List<String> files,
+                                  Map<String, String> blobs) {
+        ObjectDatabase store = objects();
+        for (String file : files) {
+            if (file.indexOf('/') >= 0) {
+                Utils.join(workDir, file).getParentFile().mkdirs();
+            }
+        }
+        if (files.size() < PARALLEL_WRITES) {
+            for (String file : files) {
+                store.copyTo(blobs.get(file), Utils.join(workDir, file));
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        try {
+            List<Future<Boolean>> writes = new ArrayList<>();
+            for (String file : files) {
+                writes.add(pool.submit(() -> store.copyTo(blobs.get(file),
+                        Utils.join(workDir, file))));
+            }
+            for (Future<Boolean> write : writes) {
+                write.get();
             }
-            currentStaged.clear();
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "stage",
-                    "staged"), currentStaged);
-        }
-        if (currMarkedRemoved.size() != 0) {
-            for (String inRemoval : currMarkedRemoved.keySet()) {
-                File removedFile = Utils.join(workDir, ".gitlet", "stage",
-                        inRemoval);
-                removedFile.delete();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
             }
-            currMarkedRemoved.clear();
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "removal",
-                    "removed"), currMarkedRemoved);
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
         }
     }
 
     /**
-     * Checks out given commit.
-     * @param id is commit id.
+     * Deletes a file of the working directory, and then every directory
+     * above it that it leaves empty.
+     * @param file is the name of the file.
      */
-    public static void reset(String id) throws IOException {
-        File commitPath = Utils.join(workDir, ".gitlet", "commits", id);
-        if (!commitPath.exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        Commit givenCommit = Utils.readObject(commitPath, Commit.class);
-        HashMap<String, String> inGiven = givenCommit.getTracked();
-        Commit current = getHead();
-        HashMap<String, String> currentTracked = current.getTracked();
-        Set<String> inGivenFiles = inGiven.keySet();
-        for (String givenFile: inGivenFiles) {
-            if (Utils.join(workDir, givenFile).exists()
-                    && !currentTracked.containsKey(givenFile)) {
-                System.out.println("There is an untracked file in the way;"
-                        + " delete it or add it first.");
-                System.exit(0);
+    public static void deleteWorkFile(String file) {
+        File root = new File(workDir);
+        File path = Utils.join(root, file);
+        if (file.indexOf('/') < 0) {
+            Utils.restrictedDelete(path);
+            return;
+        }
+        if (!path.isDirectory()) {
+            path.delete();
+        }
+        File dir = path.getParentFile();
+        while (!dir.equals(root) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /**
+     * Returns whether something untracked is in the way of a file that a
+     * checkout or merge is about to write: a file or directory at its
+     * path, or a file where one of its directories has to go.  Files that
+     * the current tree tracks and the given tree deletes are not in the
+     * way, since they are deleted first.
+     * @param name is the name of the file to be written.
+     * @param diff is a map of the changed file names to their blob ids in
+     *             the current and the given tree.
+     * @return true if the file cannot be written without losing another.
+     */
+    private static boolean inTheWay(String name,
+                                    Map<String, String[]> diff) {
+        File path = Utils.join(workDir, name);
+        if (path.isDirectory()) {
+            List<String> files = new ArrayList<>();
+            listFiles(path, name + "/", files);
+            for (String file : files) {
+                if (!deletedBy(file, diff)) {
+                    return true;
+                }
             }
+            return files.isEmpty();
         }
-        for (String givenFile: inGivenFiles) {
-            String version = inGiven.get(givenFile);
-            byte[] versionContent = Utils.readContents(Utils.join(workDir,
-                    ".gitlet", "blobs", version));
-            File wdFilePath = Utils.join(workDir, givenFile);
-            if (wdFilePath.exists()) {
-                Utils.writeContents(wdFilePath, versionContent);
-            } else {
-                wdFilePath.createNewFile();
-                Utils.writeContents(wdFilePath, versionContent);
+        if (path.exists()) {
+            return true;
+        }
+        for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1)) {
+            String dir = name.substring(0, i);
+            if (Utils.join(workDir, dir).isFile()) {
+                return !deletedBy(dir, diff);
             }
         }
-        for (String currTrackFile: currentTracked.keySet()) {
-            if (!inGiven.containsKey(currTrackFile)) {
-                Utils.restrictedDelete(Utils.join(workDir, currTrackFile));
+        return false;
+    }
+
+    /**
+     * Returns whether a file is tracked by the current tree and deleted by
+     * the given one.
+     * @param name is the name of the file.
+     * @param diff is a map of the changed file names to their blob ids in
+     *             the current and the given tree.
+     * @return true if the file is tracked now and deleted by the change.
+     */
+    private static boolean deletedBy(String name,
+                                     Map<String, String[]> diff) {
+        String[] versions = diff.get(name);
+        return versions != null && versions[0] != null && versions[1] == null;
+    }
+
+    /**
+     * Lists the files of the working directory and its subdirectories,
+     * leaving out .gitlet.
+     * @return the names of the files, sorted.
+     */
+    public static List<String> workFiles() {
+        List<String> result = new ArrayList<>();
+        listFiles(new File(workDir), "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Adds the files under a directory to a collection.
+     * @param dir is the directory.
+     * @param prefix is the name of the directory followed by '/', or empty
+     *               for the working directory.
+     * @param result is the collection of file names.
+     */
+    private static void listFiles(File dir, String prefix,
+                                  Collection<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile()) {
+                result.add(prefix + name);
+            } else if (Files.isDirectory(file.toPath(),
+                    LinkOption.NOFOLLOW_LINKS)
+                    && !(prefix.isEmpty() && name.equals(".gitlet"))) {
+                listFiles(file, prefix + name + "/", result);
             }
         }
+    }
+
+    /**
+     * Clears the staging area after a commit.
+     */
+    public static void clearStagingArea() {
+        index().committed();
+        writeIndex();
+    }
+
+    /**
+     * Checks out given commit.
+     * @param abbreviated is commit id, or any unique prefix of it.
+     */
+    public static void reset(String abbreviated) throws IOException {
+        String id = resolveCommit(abbreviated);
+        Commit givenCommit = getCommit(id);
+        checkoutCommit(getHead(), givenCommit);
         Utils.writeContents(getBranchFile(getMyBranchName()), id);
         Utils.writeContents(Utils.join(workDir, ".gitlet", "HEAD"), id);
-        clearStagingArea();
+        writeIndex();
+    }
+
+    /**
+     * Moves all loose objects into a new pack.
+     */
+    public static void repack() {
+        objects().repack();
     }
 
     /**
-     * Find latest common ancestor.
+     * Find latest common ancestor, following both parents of merge commits.
      * @param current is the current commit.
      * @param given is the head commit of the branch to be merged with current.
-     * @return
+     * @return the split point.
      */
     public static Commit splitPoint(Commit current, Commit given) {
-        HashSet<String> currentCommitsSet = new HashSet<>();
-        currentCommitsSet.add(current.getCommitId());
-        while (current.getParent() != null) {
-            Commit newCurrent = getCommit(current.getParent());
-            currentCommitsSet.add(newCurrent.getCommitId());
-            current = newCurrent;
-        }
-        String givenParent = given.getParent();
-        while (givenParent != null
-                && !currentCommitsSet.contains(given.getCommitId())) {
-            given = getCommit(givenParent);
-            givenParent = given.getParent();
-        }
-        return given;
+        CommitGraph history = graph();
+        int split = new MergeBase(history).base(
+                history.find(current.getCommitId()),
+                history.find(given.getCommitId()));
+        return getCommit(history.id(split));
     }
 
     /**
-     * Deals with merge cases where one branch head is at the split point.
-     * @param split is latest common ancestor.
+     * Deals with merge cases where one branch head is an ancestor of the
+     * other.
      * @param givenCommit is head of given branch to be merged with.
      * @param currBranchCommit is head of current branch.
-     * @param currentBranch is current branch name.
      * @param givenID is commit id of other branch head.
+     * @throws IOException
      */
-    public static void branchIsAtSplit(Commit split, Commit givenCommit,
+    public static void branchIsAtSplit(Commit givenCommit,
                                        Commit currBranchCommit,
-                                       String currentBranch, String givenID) {
-        if (split.equals(givenCommit)) {
+                                       String givenID) throws IOException {
+        CommitGraph history = graph();
+        MergeBase bases = new MergeBase(history);
+        int givenRow = history.find(givenCommit.getCommitId());
+        int currentRow = history.find(currBranchCommit.getCommitId());
+        if (bases.isAncestor(givenRow, currentRow)) {
             System.out.println("Given branch is an ancestor of the current "
                     + "branch.");
-            System.exit(0);
+            Main.exit(0);
         }
-        if (split.equals(currBranchCommit)) {
-            File currBranchPath = getBranchFile(currentBranch);
-            Utils.writeContents(currBranchPath, givenID);
+        if (bases.isAncestor(currentRow, givenRow)) {
+            reset(givenID);
             System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+            Main.exit(0);
         }
     }
 
     /**
      * Checks out the file and prepare to add to the staging area.
      * @param wdFilePath is path to file in working directory.
-     * @param versionContent is the content of the file.
      * @param theFile is the given file name.
      * @param theFileHash is the SHA-1 of the file.
      * @throws IOException
      */
-    public static void checkoutAndStage(File wdFilePath, byte[] versionContent,
-                                        String theFile, String theFileHash)
+    public static void checkoutAndStage(File wdFilePath, String theFile,
+                                        String theFileHash)
             throws IOException {
-        if (wdFilePath.exists()) {
-            Utils.writeContents(wdFilePath, versionContent);
-            automaticStage(theFile, theFileHash);
-        } else {
-            wdFilePath.createNewFile();
-            Utils.writeContents(wdFilePath, versionContent);
-            automaticStage(theFile, theFileHash);
-        }
+        wdFilePath.getParentFile().mkdirs();
+        objects().copyTo(theFileHash, wdFilePath);
+        automaticStage(theFile, theFileHash);
     }
 
     /**
@@ -743,27 +1109,9 @@ public class Commands {
      */
     public static void automaticStage(String file, String blobHash)
             throws IOException {
-        HashMap<String, String> currentStaged = getStaged();
-        currentStaged.put(file, blobHash);
-        Utils.writeObject(Utils.join(workDir, ".gitlet", "stage",
-                "staged"), currentStaged);
-        File stagedFile = Utils.join(workDir, ".gitlet", "stage",
-                file);
-        stagedFile.createNewFile();
-        Utils.writeContents(stagedFile, blobHash);
-        HashMap<String, String> currentTracked = tracked();
-        currentTracked.put(file, blobHash);
-        Utils.writeObject(Utils.join(workDir, ".gitlet", "tracked"),
-                currentTracked);
-        HashMap<String, String> currMarkedRemoved = getMarkRemoved();
-        if (currMarkedRemoved.containsKey(file)) {
-            currMarkedRemoved.remove(file);
-            Utils.writeObject(Utils.join(workDir, ".gitlet",
-                    "removal", "removed"), currMarkedRemoved);
-            File inRemoval = Utils.join(workDir, ".gitlet", "removal",
-                    file);
-            inRemoval.delete();
-        }
+        Index.Entry entry = new Index.Entry(file, blobHash, Index.STAGED);
+        entry.refresh(Utils.join(workDir, file));
+        index().put(entry);
     }
 
     /**
@@ -774,17 +1122,7 @@ public class Commands {
      */
     public static void removeAndUntrack(String file, String blobHash)
             throws IOException {
-        HashMap<String, String> currMarkedRemoved = getMarkRemoved();
-        currMarkedRemoved.put(file, blobHash);
-        Utils.writeObject(Utils.join(workDir, ".gitlet", "removal",
-                "removed"), currMarkedRemoved);
-        File removedFile = Utils.join(workDir, ".gitlet", "removal", file);
-        removedFile.createNewFile();
-        Utils.writeContents(removedFile, blobHash);
-        HashMap<String, String> currentTracked = tracked();
-        currentTracked.remove(file);
-        Utils.writeObject(Utils.join(workDir, ".gitlet", "tracked"),
-                currentTracked);
+        index().put(new Index.Entry(file, blobHash, Index.REMOVED));
     }
 
     /**
@@ -799,88 +1137,24 @@ public class Commands {
                                   String branchName, String currentBranch) {
         if (currentStaged.size() > 0 || currMarkedRemoved.size() > 0) {
             System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            Main.exit(0);
         }
         if (!getBranchFile(branchName).exists()) {
             System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+            Main.exit(0);
         }
         if (branchName.equals(currentBranch)) {
             System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            Main.exit(0);
         }
     }
 
     /**
-     * Goes through the files at the split point and adds or deletes them
-     * depending on cases for merge.
-     * @param splitTracked is the tracked files at the split point.
-     * @param currentTrack is the tracked files at the current head.
-     * @param inGiven is the the tracked files at the other branch head.
-     * @throws IOException
-     */
-    public static void checkThroughSplit(HashMap<String, String> splitTracked,
-                                         HashMap<String, String> currentTrack,
-                                         HashMap<String, String> inGiven)
-            throws IOException {
-        for (String splitFile: splitTracked.keySet()) {
-            File splitFilePath = Utils.join(workDir, splitFile);
-            String splitFileHash = splitTracked.get(splitFile);
-            if (currentTrack.containsKey(splitFile)
-                    && !inGiven.containsKey(splitFile)) {
-                if (currentTrack.get(splitFile).equals(splitFileHash)) {
-                    Utils.restrictedDelete(splitFilePath);
-                    removeAndUntrack(splitFile, splitFileHash);
-                } else {
-                    byte[] content = conflictFile(currentTrack, splitFile,
-                            splitFilePath, true);
-                    String blobHash = Utils.sha1(content);
-                    File blobFile = Utils.join(workDir, ".gitlet", "blobs",
-                            blobHash);
-                    blobFile.createNewFile();
-                    Utils.writeContents(blobFile, content);
-                    automaticStage(splitFile, blobHash);
-                }
-            }
-            if (inGiven.containsKey(splitFile)
-                    && !currentTrack.containsKey(splitFile)) {
-                if (!inGiven.get(splitFile).equals(splitFileHash)) {
-                    byte[] content = conflictFile(inGiven, splitFile,
-                            splitFilePath, false);
-                    String blobHash = Utils.sha1(content);
-                    File blobFile = Utils.join(workDir, ".gitlet", "blobs",
-                            blobHash);
-                    blobFile.createNewFile();
-                    Utils.writeContents(blobFile, content);
-                    automaticStage(splitFile, blobHash);
-                }
-            }
-            if (currentTrack.containsKey(splitFile)
-                    && inGiven.containsKey(splitFile)
-                    && !currentTrack.get(splitFile).equals(splitFileHash)
-                    && !inGiven.get(splitFile).equals(splitFileHash)
-                    && !currentTrack.get(splitFile).equals(
-                    inGiven.get(splitFile))) {
-                aConflict = true;
-                byte[] contInCurrent = Utils.readContents(getBlob(
-                        currentTrack.get(splitFile)));
-                byte [] givenContent = Utils.readContents(getBlob(
-                        inGiven.get(splitFile)));
-                Utils.writeContents(splitFilePath, "<<<<<<< HEAD\n",
-                        contInCurrent, "=======\n", givenContent, ">>>>>>>\n");
-                byte[] content = Utils.readContents(splitFilePath);
-                String blobHash = Utils.sha1(content);
-                File blobFile = Utils.join(workDir, ".gitlet", "blobs",
-                        blobHash);
-                blobFile.createNewFile();
-                Utils.writeContents(blobFile, content);
-                automaticStage(splitFile, blobHash);
-            }
-        }
-    }
-
-    /**
-     * Merge the files of the given branch with the current branch.
+     * Merge the files of the given branch with the current branch.  Only
+     * files that differ between the two branch heads can need merging, so
+     * only those are visited, found by comparing their trees.  Files the
+     * given branch deletes are merged first, so that a file can replace a
+     * directory and a directory can replace a file.
      * @param branchName is the name of the branch to be merged with current.
      * @throws IOException
      */
@@ -893,58 +1167,67 @@ public class Commands {
         String currCommitID = Utils.readContentsAsString(
                 getBranchFile(currentBranch));
         Commit currBranchCommit = getCommit(currCommitID);
-        HashMap<String, String> currentTracked = currBranchCommit.getTracked();
         String givenID = Utils.readContentsAsString(getBranchFile(branchName));
         Commit givenCommit = getCommit(givenID);
-        HashMap<String, String> inGiven = givenCommit.getTracked();
-        Set<String> inGivenFiles = inGiven.keySet();
-        for (String givenFile: inGivenFiles) {
-            if (Utils.join(workDir, givenFile).exists()
-                    && !currentTracked.containsKey(givenFile)) {
+        TreeMap<String, String[]> diff = Tree.diff(objects(),
+                currBranchCommit.getTree(), givenCommit.getTree());
+        for (Map.Entry<String, String[]> file : diff.entrySet()) {
+            if (file.getValue()[0] == null
+                    && inTheWay(file.getKey(), diff)) {
                 System.out.println("There is an untracked file in the way;"
                         + " delete it or add it first.");
-                System.exit(0);
+                Main.exit(0);
             }
         }
+        branchIsAtSplit(givenCommit, currBranchCommit, givenID);
         Commit split = splitPoint(currBranchCommit, givenCommit);
-        branchIsAtSplit(split, givenCommit, currBranchCommit, currentBranch,
-                givenID);
-        HashMap<String, String> splitTracked = split.getTracked();
-        for (String givenFile: inGivenFiles) {
-            String givenFileHash = inGiven.get(givenFile);
-            File wdFilePath = Utils.join(workDir, givenFile);
-            if (currentTracked.containsKey(givenFile)
-                    && splitTracked.containsKey(givenFile)) {
-                String currentFileHash = currentTracked.get(givenFile);
-                String splitFileHash = splitTracked.get(givenFile);
-                if (!givenFileHash.equals(splitFileHash)
-                        && currentFileHash.equals(splitFileHash)) {
-                    byte[] versionContent = Utils.readContents(Utils.join(
-                            workDir, ".gitlet", "blobs", givenFileHash));
-                    checkoutAndStage(wdFilePath, versionContent, givenFile,
-                            givenFileHash);
-                }
-            }
-            if (!currentTracked.containsKey(givenFile)
-                    && !splitTracked.containsKey(givenFile)) {
-                byte[] versionContent = Utils.readContents(Utils.join(
-                        workDir, ".gitlet", "blobs", givenFileHash));
-                checkoutAndStage(wdFilePath, versionContent, givenFile,
-                        givenFileHash);
-            }
-            if (currentTracked.containsKey(givenFile)
-                    && !splitTracked.containsKey(givenFile)) {
-                if (!givenFileHash.equals(currentTracked.get(givenFile))) {
-                    bothConflict(currentTracked, inGiven, givenFile,
-                            wdFilePath);
+        for (boolean deleting : new boolean[] {true, false}) {
+            for (Map.Entry<String, String[]> file : diff.entrySet()) {
+                if ((file.getValue()[1] == null) == deleting) {
+                    String name = file.getKey();
+                    mergeFile(name, file.getValue()[0], file.getValue()[1],
+                            Tree.lookup(objects(), split.getTree(), name));
                 }
             }
         }
-        checkThroughSplit(splitTracked, currentTracked, inGiven);
         commitMerge("Merged " + branchName + " into " + currentBranch + ".",
                 currCommitID, givenID, currentBranch);
     }
 
+    /**
+     * Merges one file that differs between the two branch heads.  The
+     * given branch's version wins if the current branch left the file as
+     * it was at the split point, the current version stays if the given
+     * branch did, and otherwise the file is in conflict.
+     * @param file is the name of the file.
+     * @param current is its blob id at the current head, or null.
+     * @param given is its blob id at the other branch head, or null.
+     * @param atSplit is its blob id at the split point, or null.
+     * @throws IOException
+     */
+    public static void mergeFile(String file, String current, String given,
+                                 String atSplit) throws IOException {
+        File wdFilePath = Utils.join(workDir, file);
+        if (Objects.equals(current, atSplit)) {
+            if (given == null) {
+                deleteWorkFile(file);
+                removeAndUntrack(file, current);
+            } else {
+                checkoutAndStage(wdFilePath, file, given);
+            }
+        } else if (!Objects.equals(given, atSplit)) {
+            wdFilePath.getParentFile().mkdirs();
+            Utils.writeContents(wdFilePath, "<<<<<<< HEAD\n",
+                    current == null ? "" : getBlob(current), "=======\n",
+                    given == null ? "" : getBlob(given), ">>>>>>>\n");
+            byte[] content = Utils.readContents(wdFilePath);
+            String blobHash = Utils.sha1(content);
+            objects().write(blobHash, content);
+            automaticStage(file, blobHash);
+            aConflict = true;
+        }
+    }
+
     /**
      * Makes a merge commit.
      * @param msg is the commit message.
@@ -960,127 +1243,49 @@ public class Commands {
         HashMap<String, String> currMarkedRemoved = getMarkRemoved();
         if (currentStaged.size() == 0 && currMarkedRemoved.size() == 0) {
             System.out.println("No changes added to the commit.");
-            System.exit(0);
+            Main.exit(0);
         }
-        HashMap<String, String> tracking = tracked();
-        File current = Utils.join(workDir, ".gitlet", "HEAD");
-        Commit thisCommit = new Commit(msg, tracking, oneParent, twoParent,
+        Transaction tx = transaction();
+        String tree = Tree.update(tx, getCommit(oneParent).getTree(),
+                index().changes());
+        Commit thisCommit = new Commit(msg, tree, oneParent, twoParent,
                 myBranch);
-        Utils.writeContents(current, thisCommit.getCommitId());
-        HashMap<String, String> mapOfCommits = getCommitHashes();
-        mapOfCommits.put(thisCommit.getCommitId(), thisCommit.getMessage());
-        File allCommits = Utils.join(workDir, ".gitlet", "commits", "hashes");
-        Utils.writeObject(allCommits, mapOfCommits);
-        File thisBranch = getBranchFile(myBranch);
-        Utils.writeContents(thisBranch, thisCommit.getCommitId());
-        File thisCommitFile = Utils.join(workDir, ".gitlet", "commits",
-                thisCommit.getCommitId());
-        thisCommitFile.createNewFile();
-        Utils.writeObject(thisCommitFile, thisCommit);
-        if (currentStaged.size() != 0) {
-            for (String stagedFile : currentStaged.keySet()) {
-                File inStage = Utils.join(workDir, ".gitlet", "stage",
-                        stagedFile);
-                inStage.delete();
-            }
-            currentStaged.clear();
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "stage",
-                    "staged"), currentStaged);
-        }
-        if (currMarkedRemoved.size() != 0) {
-            for (String inRemoval : currMarkedRemoved.keySet()) {
-                File removedFile = Utils.join(workDir, ".gitlet", "removal",
-                        inRemoval);
-                removedFile.delete();
-            }
-            currMarkedRemoved.clear();
-            Utils.writeObject(Utils.join(workDir, ".gitlet", "removal",
-                    "removed"), currMarkedRemoved);
-        }
+        writeCommit(tx, thisCommit, myBranch);
         if (aConflict) {
             System.out.println("Encountered a merge conflict.");
         }
     }
 
-    /**
-     * Handles merge case where a file present at the split point was modified
-     * in one branch and deleted in the other.
-     * @param tracked is the hashmap of tracked files.
-     * @param splitFile is the name of the file at the split point.
-     * @param splitFilePath is the path of the file in the working directory.
-     * @param givenEmpty indicates whether the file was deleted in the given
-     *                   branch.
-     * @return
-     */
-    public static byte[] conflictFile(HashMap<String, String> tracked,
-                                      String splitFile, File splitFilePath,
-                                      boolean givenEmpty) {
-        byte[] contents = Utils.readContents(getBlob(
-                tracked.get(splitFile)));
-        if (givenEmpty) {
-            Utils.writeContents(splitFilePath, "<<<<<<< HEAD\n",
-                    contents, "=======\n", ">>>>>>>\n");
-        } else {
-            Utils.writeContents(splitFilePath, "<<<<<<< HEAD\n",
-                    "=======\n", contents, ">>>>>>>\n");
-        }
-        aConflict = true;
-        return Utils.readContents(splitFilePath);
-    }
+    /** My current working directory. */
+    private static String workDir = System.getProperty("user.dir");
 
-    /**
-     * Handles merge case where file present at the split point is modified
-     * differently in both branches.
-     * @param cur is the hashmap of tracked files by the current head.
-     * @param give is the hashmap of tracked files by the other branch head.
-     * @param theFile is the name of the file.
-     * @param theFilePath is the path to the file in the working directory.
-     * @throws IOException
-     */
-    public static void bothConflict(HashMap<String, String> cur,
-                                    HashMap<String, String> give,
-                                    String theFile, File theFilePath)
-            throws IOException {
-        byte[] contInCurrent = Utils.readContents(getBlob(
-                cur.get(theFile)));
-        byte [] givenContent = Utils.readContents(getBlob(
-                give.get(theFile)));
-        Utils.writeContents(theFilePath, "<<<<<<< HEAD\n",
-                contInCurrent, "=======\n", givenContent, ">>>>>>>\n");
-        byte[] content = Utils.readContents(theFilePath);
-        String blobHash = Utils.sha1(content);
-        File blobFile = Utils.join(workDir, ".gitlet", "blobs",
-                blobHash);
-        blobFile.createNewFile();
-        Utils.writeContents(blobFile, content);
-        automaticStage(theFile, blobHash);
-        aConflict = true;
-    }
+    /** Indicates whether there exists a merge conflict. */
+    private static boolean aConflict = false;
 
-    /** Initial hashmap of all commits. */
-    private static HashMap<String, String> commitsMap = new HashMap<>();
+    /** Object store of the repository, or null until first use. */
+    private static ObjectDatabase objectDatabase;
 
-    /** Initial hashmap of staged files. */
-    private static HashMap<String, String> staged = new HashMap<>();
+    /** Commit graph of the repository, or null until first use. */
+    private static CommitGraph commitGraph;
 
-    /** My current working directory. */
-    private static String workDir = System.getProperty("user.dir");
+    /** Fewest files checkout writes on a pool of threads. */
+    private static final int PARALLEL_WRITES = 16;
 
-    /** Initial hashmap of removed files. */
-    private static HashMap<String, String> markRemoved = new HashMap<>();
+    /** Fewest files add hashes in parallel. */
+    private static final int PARALLEL_ADDS = 16;
 
-    /** Initial hashmap of tracked files. */
-    private static HashMap<String, String> track = new HashMap<>();
+    /** Most threads checkout writes files with. */
+    private static final int WRITERS = 8;
 
-    /** All files with modifications not staged. */
-    private static ArrayList<String> modsNotStaged = new ArrayList<>();
+    /** Bytes of output buffered before they are written. */
+    static final int OUTPUT_BUFFER = 1 << 16;
 
-    /** All untracked files. */
-    private static ArrayList<String> untracked = new ArrayList<>();
+    /** Index of the repository, or null until first use. */
+    private static Index theIndex;
 
-    /** Indicates whether there exists a merge conflict. */
-    private static boolean aConflict = false;
+    /** Indicates whether the index changed in memory during status. */
+    private static boolean indexDirty = false;
 
-    /** Path to /branches. */
-    private static File dBranches = Utils.join(workDir, ".gitlet", "branches");
+    /** Indicates whether a file-system monitor answered this command. */
+    private static boolean monitored = false;
 }
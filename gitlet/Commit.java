@@ -1,50 +1,65 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
-/** Commit class to construct commit objects.
+/** Commit class to construct commit objects.  Commits are stored in a
+ *  versioned binary format (see encode) that names the root tree of their
+ *  files; commits written by older versions, with their files listed in
+ *  the commit itself or in Java serialization, can still be decoded.
  *  @author Austin Ralleta
  */
 public class Commit implements Serializable {
     /** Constructs a normal commit object.
      * @param m is the commit message.
-     * @param tracking hashmap of files tracked in commit.
+     * @param treeId is the SHA-1 of the root tree of files in commit.
      * @param theParent is parent of commit.
      * @param myBranch is branch the commit is on.
      */
-    public Commit(String m, HashMap<String, String> tracking,
-                  String theParent, String myBranch) {
-        timestamp = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z").format(
-                new Date());
+    public Commit(String m, String treeId, String theParent,
+                  String myBranch) {
+        Date now = new Date();
+        timestamp = new SimpleDateFormat(DATE_FORMAT).format(now);
+        time = now.getTime() / 1000;
         message = m;
-        tracked = tracking;
+        tree = treeId;
         parent = theParent;
-        commitId = Utils.sha1(timestamp, message, parent,
-                blobReferences(tracked));
+        commitId = Utils.sha1(timestamp, message, parent, tree);
         isMerge = false;
         branch = myBranch;
     }
 
     /** Constructs a merge commit object.
      * @param m is the commit message.
-     * @param tracking hashmap of files tracked in commit.
+     * @param treeId is the SHA-1 of the root tree of files in commit.
      * @param firstParent is first parent of commit.
      * @param secondParent is second parent of commit.
      * @param myBranch is branch the commit is on.
      */
-    public Commit(String m, HashMap<String, String> tracking,
-                  String firstParent, String secondParent, String myBranch) {
-        timestamp = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z").format(
-                new Date());
+    public Commit(String m, String treeId, String firstParent,
+                  String secondParent, String myBranch) {
+        Date now = new Date();
+        timestamp = new SimpleDateFormat(DATE_FORMAT).format(now);
+        time = now.getTime() / 1000;
         message = m;
-        tracked = tracking;
+        tree = treeId;
         parent = firstParent;
         parentTwo = secondParent;
-        commitId = Utils.sha1(timestamp, message, parent, parentTwo,
-                blobReferences(tracked));
+        commitId = Utils.sha1(timestamp, message, parent, parentTwo, tree);
         isMerge = true;
         branch = myBranch;
     }
@@ -55,25 +70,202 @@ public class Commit implements Serializable {
      */
     public Commit(String dateTime, String m) {
         timestamp = dateTime;
+        time = parseTime(dateTime);
         message = m;
         commitId = Utils.sha1(timestamp, message);
         parent = null;
-        tracked = new HashMap<String, String>();
+        tree = Tree.EMPTY;
         isMerge = false;
         branch = "master";
     }
 
     /**
-     * Turns all the blobs into a string.
-     * @param trackedBlobs is the tracked files of the commit
-     * @return concatenated SHA-1 of blobs.
+     * Constructs an empty commit to be filled in by decode.
      */
-    public String blobReferences(HashMap<String, String> trackedBlobs) {
-        StringBuilder blobRefs = new StringBuilder();
-        for (String ref: trackedBlobs.keySet()) {
-            blobRefs.append(ref);
+    private Commit() {
+    }
+
+    /**
+     * Encodes this commit in the binary commit format: a magic word and
+     * version byte, the id, the timestamp as a length-prefixed UTF-8 string
+     * and as 8 bytes of seconds since the epoch, the message and branch as
+     * length-prefixed UTF-8 strings, the number of parents followed by each
+     * parent as 20 raw bytes, and the 20 raw bytes of the root tree.
+     * Version 2 lacks the seconds, which are parsed from the timestamp.
+     * Commits read from older repositories have no tree until they are
+     * upgraded, and are written in version 1, which lists the tracked
+     * files in place of the tree, sorted by name, each a length-prefixed
+     * name and the 20 raw bytes of its blob id.
+     * @return the encoded commit.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(tree == null ? 1 : VERSION);
+            out.write(Utils.uidToBytes(commitId));
+            writeString(out, timestamp);
+            if (tree != null) {
+                out.writeLong(time);
+            }
+            writeString(out, message);
+            writeString(out, branch);
+            int parents = parent == null ? 0 : isMerge ? 2 : 1;
+            out.writeByte(parents);
+            if (parents > 0) {
+                out.write(Utils.uidToBytes(parent));
+            }
+            if (parents > 1) {
+                out.write(Utils.uidToBytes(parentTwo));
+            }
+            if (tree != null) {
+                out.write(Utils.uidToBytes(tree));
+            } else {
+                out.writeInt(tracked.size());
+                for (Map.Entry<String, String> entry
+                        : new TreeMap<>(tracked).entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.write(Utils.uidToBytes(entry.getValue()));
+                }
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error serializing commit.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a commit.
+     * @param data is a commit in the binary commit format or in Java
+     *             serialization.
+     * @return the commit.
+     */
+    public static Commit decode(byte[] data) {
+        if (data.length < 4 || (data[0] & 0xff) != (MAGIC >>> 24)
+                || data[1] != (byte) (MAGIC >>> 16)
+                || data[2] != (byte) (MAGIC >>> 8)
+                || data[3] != (byte) MAGIC) {
+            return decodeSerialized(data);
+        }
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(data));
+        Commit result = new Commit();
+        try {
+            in.readInt();
+            int version = in.readByte();
+            if (version < 1 || version > VERSION) {
+                throw Utils.error("Unknown commit format version %d.",
+                        version);
+            }
+            result.commitId = readId(in);
+            result.timestamp = readString(in);
+            result.time = version > 2 ? in.readLong()
+                : parseTime(result.timestamp);
+            result.message = readString(in);
+            result.branch = readString(in);
+            int parents = in.readByte();
+            if (parents > 0) {
+                result.parent = readId(in);
+            }
+            if (parents > 1) {
+                result.parentTwo = readId(in);
+            }
+            result.isMerge = parents > 1;
+            if (version > 1) {
+                result.tree = readId(in);
+                return result;
+            }
+            int count = in.readInt();
+            result.tracked = new HashMap<>(Math.max(16, count * 4 / 3 + 1));
+            for (int i = 0; i < count; i += 1) {
+                String name = readString(in);
+                result.tracked.put(name, readId(in));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt commit.");
+        }
+        return result;
+    }
+
+    /**
+     * Decodes a commit written with Java serialization.
+     * @param data is the serialized commit.
+     * @return the commit.
+     */
+    private static Commit decodeSerialized(byte[] data) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(data))) {
+            Commit result = (Commit) in.readObject();
+            result.time = parseTime(result.timestamp);
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Reads a commit file.
+     * @param file is the commit file.
+     * @return the commit.
+     */
+    public static Commit read(File file) {
+        Events.CommitLoad event = Events.commitLoad();
+        byte[] data = Utils.readContents(file);
+        Commit result = decode(data);
+        if (event != null) {
+            event.id = file.getName();
+            event.size = data.length;
+            event.commit();
         }
-        return blobRefs.toString();
+        return result;
+    }
+
+    /**
+     * Writes this commit to a file in the binary commit format.
+     * @param file is the commit file.
+     */
+    public void write(File file) {
+        Utils.writeContents(file, encode());
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string.
+     * @param out is the stream to write to.
+     * @param str is the string.
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream out, String str)
+            throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     * @param in is the stream to read from.
+     * @return the string.
+     * @throws IOException
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a raw SHA-1.
+     * @param in is the stream to read from.
+     * @return the SHA-1 in hexadecimal.
+     * @throws IOException
+     */
+    private static String readId(DataInputStream in) throws IOException {
+        byte[] raw = new byte[Utils.UID_BYTES];
+        in.readFully(raw);
+        return Utils.bytesToUid(raw, 0);
     }
 
     /**
@@ -85,11 +277,48 @@ public class Commit implements Serializable {
     }
 
     /**
-     * Get the map of tracked files.
-     * @return the hashmap of tracked files.
+     * Get the tracked files, reading the commit's trees the first time.
+     * @return the manifest of tracked files.
+     */
+    Manifest getManifest() {
+        if (manifest == null) {
+            manifest = tree != null ? Tree.manifest(Commands.objects(), tree)
+                : Manifest.of(tracked);
+            ObjectCache.COMMITS.reweigh(commitId, this, weight());
+        }
+        return manifest;
+    }
+
+    /**
+     * Estimates the memory this commit holds, for caching it.
+     * @return about its size in bytes, with its manifest once read.
+     */
+    long weight() {
+        long result = BASE_WEIGHT + 2L * message.length();
+        if (tracked != null) {
+            result += (long) tracked.size() * FILE_WEIGHT;
+        }
+        if (manifest != null) {
+            result += (long) manifest.size() * FILE_WEIGHT;
+        }
+        return result;
+    }
+
+    /**
+     * Get the root tree.
+     * @return the SHA-1 of the root tree, or null for a commit written
+     *         before trees that has not been upgraded.
+     */
+    public String getTree() {
+        return tree;
+    }
+
+    /**
+     * Sets the root tree of a commit written before trees, keeping its id.
+     * @param treeId is the SHA-1 of the tree of its tracked files.
      */
-    public HashMap<String, String> getTracked() {
-        return tracked;
+    void setTree(String treeId) {
+        tree = treeId;
     }
 
     /**
@@ -100,6 +329,60 @@ public class Commit implements Serializable {
         return timestamp;
     }
 
+    /**
+     * Get the commit time as a number.
+     * @return seconds since the epoch.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Parses a commit time.
+     * @param dateTime is the time as log prints it.
+     * @return seconds since the epoch.
+     */
+    private static long parseTime(String dateTime) {
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(dateTime)
+                    .getTime() / 1000;
+        } catch (ParseException excp) {
+            throw Utils.error("Bad commit time %s.", dateTime);
+        }
+    }
+
+    /**
+     * Parses a date given to a command, in the format log prints, or as
+     * yyyy-MM-dd with an optional HH:mm or HH:mm:ss after a space or T in
+     * the local time zone, or as @ followed by seconds since the epoch.
+     * @param text is the date.
+     * @return seconds since the epoch, or null if TEXT is not a date.
+     */
+    static Long parseDate(String text) {
+        if (text.startsWith("@")) {
+            try {
+                return Long.parseLong(text.substring(1));
+            } catch (NumberFormatException excp) {
+                return null;
+            }
+        }
+        String normal = text.trim();
+        if (normal.length() > ISO_DATE && normal.charAt(ISO_DATE) == 'T') {
+            normal = normal.substring(0, ISO_DATE) + " "
+                + normal.substring(ISO_DATE + 1);
+        }
+        for (String format : DATE_FORMATS) {
+            SimpleDateFormat parser = new SimpleDateFormat(format);
+            parser.setLenient(false);
+            ParsePosition pos = new ParsePosition(0);
+            Date date = parser.parse(normal, pos);
+            if (date != null && pos.getIndex() == normal.length()) {
+                return Math.floorDiv(date.getTime(), 1000);
+            }
+        }
+        return null;
+    }
+
     /**
      * Get the commit message.
      * @return the messages.
@@ -140,9 +423,40 @@ public class Commit implements Serializable {
         return branch;
     }
 
+    /** Serialization version of commits written before the binary
+     *  format, which are still decoded from Java serialization. */
+    private static final long serialVersionUID = -8977960662746519171L;
+
+    /** Format of commit times. */
+    private static final String DATE_FORMAT = "EEE MMM dd HH:mm:ss yyyy Z";
+
+    /** Length of a yyyy-MM-dd date. */
+    private static final int ISO_DATE = 10;
+
+    /** Formats of dates given to commands. */
+    private static final String[] DATE_FORMATS = {
+        DATE_FORMAT, "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm", "yyyy-MM-dd",
+    };
+
+    /** First word of an encoded commit ("GCMT"). */
+    private static final int MAGIC = 0x47434d54;
+
+    /** Version of the binary commit format. */
+    private static final int VERSION = 3;
+
+    /** Estimated bytes held by a commit apart from its message and
+     *  files. */
+    private static final long BASE_WEIGHT = 400;
+
+    /** Estimated bytes held for each file of a commit. */
+    private static final long FILE_WEIGHT = 96;
+
     /** Time committed. */
     private String timestamp;
 
+    /** Time committed, in seconds since the epoch. */
+    private long time;
+
     /** Commit message. */
     private String message;
 
@@ -155,9 +469,16 @@ public class Commit implements Serializable {
     /** Second parent of commit. */
     private String parentTwo;
 
-    /** HashMap of files tracked by commit. */
+    /** HashMap of files tracked by a commit written before trees, or
+     *  null. */
     private HashMap<String, String> tracked;
 
+    /** Files tracked by commit, or null until first used. */
+    private transient Manifest manifest;
+
+    /** SHA-1 of the root tree of files tracked by commit. */
+    private String tree;
+
     /** Indicates if commit is a merge commit. */
     private boolean isMerge;
 
@@ -0,0 +1,264 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+
+/** The commit graph: a memory-mapped table with one fixed-width row per
+ *  commit holding its raw id, the row numbers of its parents, its
+ *  generation number and its commit time.  Rows are appended as commits
+ *  are made, so every commit's parents come before it, and history walks
+ *  follow row numbers without reading any commit file.  Commits are found
+ *  by id through a CommitIndex kept beside the graph file.
+ *  @author Austin Ralleta
+ */
+class CommitGraph {
+    /**
+     * Opens the commit graph of a repository.
+     * @param graphFile is the commit graph file.
+     */
+    CommitGraph(File graphFile) {
+        file = graphFile;
+    }
+
+    /**
+     * Writes a new commit graph file holding a set of commits.
+     * @param graphFile is the file to write.
+     * @param commits is the commits, each after all of its parents.
+     */
+    static void write(File graphFile, List<Commit> commits) {
+        HashMap<String, Integer> rows = new HashMap<>();
+        int[] generations = new int[commits.size()];
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(graphFile.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Commit commit : commits) {
+                int row = rows.size();
+                int one = rows.getOrDefault(commit.getParent(), -1);
+                int two = rows.getOrDefault(commit.getParentTwo(), -1);
+                generations[row] = 1 + Math.max(
+                        one < 0 ? 0 : generations[one],
+                        two < 0 ? 0 : generations[two]);
+                rows.put(commit.getCommitId(), row);
+                out.write(Utils.uidToBytes(commit.getCommitId()));
+                out.writeInt(one);
+                out.writeInt(two);
+                out.writeInt(generations[row]);
+                out.writeLong(commit.getTime());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Gets the number of commits in the graph.
+     * @return the row count.
+     */
+    int size() {
+        return (int) ((table().capacity() - HEADER) / ROW);
+    }
+
+    /**
+     * Finds the row of a commit.
+     * @param id is the SHA-1 of the commit.
+     * @return the row number, or -1 if the commit is not in the graph.
+     */
+    int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        return index().resolve(id);
+    }
+
+    /**
+     * Finds the row of the commit whose id starts with a prefix.
+     * @param prefix is a string of lower-case hexadecimal digits.
+     * @return the row number, -1 if no commit's id starts with PREFIX, or
+     *         CommitIndex.AMBIGUOUS if more than one does.
+     */
+    int resolve(String prefix) {
+        return index().resolve(prefix);
+    }
+
+    /**
+     * Gets the id of a commit.
+     * @param row is the row of the commit.
+     * @return the SHA-1 of the commit.
+     */
+    String id(int row) {
+        return Utils.bytesToUid(rawId(row), 0);
+    }
+
+    /**
+     * Gets the raw id of a commit.
+     * @param row is the row of the commit.
+     * @return the UID_BYTES bytes of its SHA-1.
+     */
+    byte[] rawId(int row) {
+        byte[] raw = new byte[Utils.UID_BYTES];
+        table().get(HEADER + row * ROW, raw);
+        return raw;
+    }
+
+    /**
+     * Gets the first parent of a commit.
+     * @param row is the row of the commit.
+     * @return the row of the first parent, or -1 if there is none.
+     */
+    int parent(int row) {
+        return table().getInt(HEADER + row * ROW + PARENT);
+    }
+
+    /**
+     * Gets the second parent of a commit.
+     * @param row is the row of the commit.
+     * @return the row of the second parent, or -1 if there is none.
+     */
+    int parentTwo(int row) {
+        return table().getInt(HEADER + row * ROW + PARENT_TWO);
+    }
+
+    /**
+     * Gets the generation number of a commit: 1 for a root commit, and
+     * otherwise one more than the largest generation of its parents.
+     * @param row is the row of the commit.
+     * @return the generation number.
+     */
+    int generation(int row) {
+        return table().getInt(HEADER + row * ROW + GENERATION);
+    }
+
+    /**
+     * Gets the time of a commit.
+     * @param row is the row of the commit.
+     * @return seconds since the epoch.
+     */
+    long time(int row) {
+        return table().getLong(HEADER + row * ROW + TIME);
+    }
+
+    /**
+     * Determine if the mapped table still covers the whole graph file, so
+     * that no other process has appended to it.
+     * @return true if it does, or if the table is not mapped yet.
+     */
+    boolean isCurrent() {
+        return mapped == null || mapped.capacity() == file.length();
+    }
+
+    /**
+     * Appends a commit whose parents are already in the graph.  Part of
+     * a row left by a process that died while appending is dropped first.
+     * @param commit is the new commit.
+     * @return the row of the commit.
+     */
+    int append(Commit commit) {
+        int existing = find(commit.getCommitId());
+        if (existing >= 0) {
+            return existing;
+        }
+        int one = commit.getParent() == null ? -1 : find(commit.getParent());
+        int two = commit.getParentTwo() == null
+                ? -1 : find(commit.getParentTwo());
+        int generation = 1;
+        if (one >= 0) {
+            generation = Math.max(generation, generation(one) + 1);
+        }
+        if (two >= 0) {
+            generation = Math.max(generation, generation(two) + 1);
+        }
+        int row = size();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(HEADER + (long) row * ROW);
+            channel.position(HEADER + (long) row * ROW);
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(channel));
+            out.write(Utils.uidToBytes(commit.getCommitId()));
+            out.writeInt(one);
+            out.writeInt(two);
+            out.writeInt(generation);
+            out.writeLong(commit.getTime());
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        mapped = null;
+        return row;
+    }
+
+    /**
+     * Opens the index of commit ids on first use.
+     * @return the index.
+     */
+    private CommitIndex index() {
+        if (index == null) {
+            index = new CommitIndex(Utils.join(file.getParentFile(),
+                    "commit-index"), this);
+        }
+        return index;
+    }
+
+    /**
+     * Maps the graph file on first use.
+     * @return the mapped table.
+     */
+    private MappedByteBuffer table() {
+        if (mapped == null) {
+            try (FileChannel channel = FileChannel.open(file.toPath())) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (mapped.getInt(0) != MAGIC) {
+                throw Utils.error("Corrupt commit graph.");
+            }
+        }
+        return mapped;
+    }
+
+    /** First word of the commit graph file ("GCGR"). */
+    private static final int MAGIC = 0x47434752;
+
+    /** Format version of the commit graph file. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first row. */
+    private static final int HEADER = 8;
+
+    /** Offset of the first parent in a row. */
+    private static final int PARENT = Utils.UID_BYTES;
+
+    /** Offset of the second parent in a row. */
+    private static final int PARENT_TWO = PARENT + 4;
+
+    /** Offset of the generation number in a row. */
+    private static final int GENERATION = PARENT_TWO + 4;
+
+    /** Offset of the commit time in a row. */
+    private static final int TIME = GENERATION + 4;
+
+    /** Bytes in one row. */
+    private static final int ROW = TIME + 8;
+
+    /** The commit graph file. */
+    private File file;
+
+    /** The memory-mapped table, or null until first use. */
+    private MappedByteBuffer mapped;
+
+    /** The index of commit ids, or null until first use. */
+    private CommitIndex index;
+}
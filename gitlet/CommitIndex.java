@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/** A memory-mapped index of the commit graph sorted by commit id, so that
+ *  a commit is found from any prefix of its id by binary search.  The file
+ *  holds the number of graph rows it covers, a fan-out table giving for
+ *  each first byte B the number of ids whose first byte is at most B, and
+ *  then one entry per covered row: the raw id and the row number, in
+ *  increasing order of id.  Rows appended to the graph after the index was
+ *  written are searched one by one until there are enough of them to be
+ *  worth writing a new index.  The index is derived from the graph alone,
+ *  so it is rewritten whenever it is missing or no longer matches the
+ *  graph, which its header, holding the id in the last row it covers, lets
+ *  it check.  If it cannot be written, every row is searched instead.
+ *  @author Austin Ralleta
+ */
+class CommitIndex {
+    /**
+     * Opens the index of a commit graph.
+     * @param indexFile is the index file.
+     * @param commitGraph is the graph it indexes.
+     */
+    CommitIndex(File indexFile, CommitGraph commitGraph) {
+        file = indexFile;
+        graph = commitGraph;
+        table = map();
+    }
+
+    /**
+     * Finds the commits whose ids start with a prefix, first writing a
+     * new index if this one is missing, does not match the graph, or
+     * leaves too many rows out.
+     * @param prefix is a string of hexadecimal digits.
+     * @return the row of the only such commit, -1 if there is none, or
+     *         AMBIGUOUS if there are several.
+     */
+    int resolve(String prefix) {
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] low = new byte[Utils.UID_BYTES];
+        for (int i = 0; i < prefix.length(); i += 1) {
+            int digit = Character.digit(prefix.charAt(i), 16);
+            if (digit < 0 || Character.isUpperCase(prefix.charAt(i))) {
+                return -1;
+            }
+            low[i / 2] |= (byte) (i % 2 == 0 ? digit << 4 : digit);
+        }
+        if (isStale()) {
+            write();
+        }
+        int digits = prefix.length();
+        int result = -1;
+        int found = 0;
+        int lo = 0;
+        if (table != null) {
+            int first = (low[0] & 0xff) - 1;
+            int last = digits == 1 ? first + 16 : first + 1;
+            lo = first < 0 ? 0 : table.getInt(FANOUT + first * 4);
+            int hi = table.getInt(FANOUT + last * 4);
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(mid, low) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+        }
+        for (int i = lo; i < covered() && found < 2; i += 1) {
+            if (!startsWith(entryId(i), low, digits)) {
+                break;
+            }
+            result = table.getInt(ENTRIES + i * ENTRY + Utils.UID_BYTES);
+            found += 1;
+        }
+        for (int row = covered(); row < graph.size() && found < 2;
+             row += 1) {
+            if (startsWith(graph.rawId(row), low, digits)) {
+                result = row;
+                found += 1;
+            }
+        }
+        if (found > 1) {
+            return AMBIGUOUS;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of graph rows in the index.
+     * @return the number of entries, or 0 if there is no index.
+     */
+    int covered() {
+        return table == null ? 0 : table.getInt(COVERED);
+    }
+
+    /**
+     * Determine if the index should be written again.
+     * @return true if it is missing, covers rows the graph does not have
+     *         or has different ids in them, or leaves more than TAIL_LIMIT
+     *         rows out.
+     */
+    boolean isStale() {
+        if (table == null) {
+            return true;
+        }
+        int size = graph.size();
+        int covered = covered();
+        if (covered > size || size - covered > TAIL_LIMIT) {
+            return true;
+        }
+        byte[] last = new byte[Utils.UID_BYTES];
+        table.get(LAST, last);
+        return covered > 0 && !Arrays.equals(last, graph.rawId(covered - 1));
+    }
+
+    /**
+     * Writes a new index of every row of the graph and maps it.  If the
+     * file cannot be written, there is no index until it next can be.
+     */
+    void write() {
+        int size = graph.size();
+        byte[][] entries = new byte[size][];
+        for (int row = 0; row < size; row += 1) {
+            byte[] entry = Arrays.copyOf(graph.rawId(row), ENTRY);
+            entry[Utils.UID_BYTES] = (byte) (row >>> 24);
+            entry[Utils.UID_BYTES + 1] = (byte) (row >>> 16);
+            entry[Utils.UID_BYTES + 2] = (byte) (row >>> 8);
+            entry[Utils.UID_BYTES + 3] = (byte) row;
+            entries[row] = entry;
+        }
+        Arrays.sort(entries, Comparator.comparing((byte[] e) -> e,
+                Arrays::compareUnsigned));
+        int[] fanout = new int[FANOUT_SIZE];
+        for (byte[] entry : entries) {
+            fanout[entry[0] & 0xff] += 1;
+        }
+        File tmp = Utils.join(file.getParentFile(), file.getName() + "-"
+                + ProcessHandle.current().pid() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(size);
+                out.write(size == 0 ? new byte[Utils.UID_BYTES]
+                        : graph.rawId(size - 1));
+                int total = 0;
+                for (int count : fanout) {
+                    total += count;
+                    out.writeInt(total);
+                }
+                for (byte[] entry : entries) {
+                    out.write(entry);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            table = null;
+            return;
+        }
+        table = map();
+    }
+
+    /**
+     * Maps the index file.
+     * @return the mapped file, or null if it is missing, unreadable or not
+     *         an index.
+     */
+    private MappedByteBuffer map() {
+        if (!file.isFile()) {
+            return null;
+        }
+        MappedByteBuffer result;
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            if (channel.size() < ENTRIES) {
+                return null;
+            }
+            result = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            return null;
+        }
+        if (result.getInt(0) != MAGIC || result.getInt(4) != VERSION
+                || result.capacity() != ENTRIES
+                    + (long) result.getInt(COVERED) * ENTRY) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the id of an entry.
+     * @param i is the position of the entry.
+     * @return its raw id.
+     */
+    private byte[] entryId(int i) {
+        byte[] result = new byte[Utils.UID_BYTES];
+        table.get(ENTRIES + i * ENTRY, result);
+        return result;
+    }
+
+    /**
+     * Compares the id of an entry with a raw id.
+     * @param i is the position of the entry.
+     * @param raw is the raw id.
+     * @return a negative number, zero or a positive number as the entry's
+     *         id is less than, equal to or greater than RAW.
+     */
+    private int compare(int i, byte[] raw) {
+        return Arrays.compareUnsigned(entryId(i), raw);
+    }
+
+    /**
+     * Determine if a raw id starts with a prefix.
+     * @param id is the raw id.
+     * @param prefix is the raw prefix, padded with zero bits.
+     * @param digits is the number of hexadecimal digits in the prefix.
+     * @return true if the first DIGITS digits of ID are those of PREFIX.
+     */
+    private static boolean startsWith(byte[] id, byte[] prefix,
+                                      int digits) {
+        for (int i = 0; i < digits / 2; i += 1) {
+            if (id[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return digits % 2 == 0
+            || (id[digits / 2] & 0xf0) == (prefix[digits / 2] & 0xf0);
+    }
+
+    /** Result of resolve for a prefix of several commits' ids. */
+    static final int AMBIGUOUS = -2;
+
+    /** Most graph rows left out of the index before it is rewritten. */
+    static final int TAIL_LIMIT = 64;
+
+    /** First word of the index file ("GCIX"). */
+    private static final int MAGIC = 0x47434958;
+
+    /** Format version of the index file. */
+    private static final int VERSION = 1;
+
+    /** Offset of the number of rows covered. */
+    private static final int COVERED = 8;
+
+    /** Number of entries in the fan-out table. */
+    private static final int FANOUT_SIZE = 256;
+
+    /** Offset of the id in the last row covered. */
+    private static final int LAST = COVERED + 4;
+
+    /** Offset of the fan-out table. */
+    private static final int FANOUT = LAST + Utils.UID_BYTES;
+
+    /** Offset of the first entry. */
+    private static final int ENTRIES = FANOUT + FANOUT_SIZE * 4;
+
+    /** Bytes in one entry. */
+    private static final int ENTRY = Utils.UID_BYTES + 4;
+
+    /** The index file. */
+    private final File file;
+
+    /** The commit graph indexed. */
+    private final CommitGraph graph;
+
+    /** The mapped index file. */
+    private MappedByteBuffer table;
+}
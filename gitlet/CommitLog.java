@@ -0,0 +1,403 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/** An append-only log of what global-log prints about each commit, one
+ *  record per row of the commit graph, in the order of the rows.  Each
+ *  record holds its row, the commit's time, id, parents if it is a merge,
+ *  date and message, with its length both before and after it, so that
+ *  the log is read backwards, newest commit first, a block at a time,
+ *  without reading any commit file or holding more than a block in
+ *  memory.  A record only partly written by a process that died is
+ *  dropped before the next append, and rows the log does not have, as in
+ *  a repository made before it, are appended from their commits.
+ *  @author Austin Ralleta
+ */
+class CommitLog {
+    /**
+     * Opens the commit log of a repository.
+     * @param logFile is the commit log file.
+     */
+    CommitLog(File logFile) {
+        file = logFile;
+    }
+
+    /**
+     * Appends the rows of the commit graph that the log does not have.
+     * @param graph is the commit graph.
+     * @param commitOf gets the commit in a row.
+     */
+    void update(CommitGraph graph, IntFunction<Commit> commitOf) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long end = validEnd(channel);
+            int next = 0;
+            if (end > HEADER) {
+                Cursor last = new Cursor(channel, HEADER, end, BLOCK);
+                last.back();
+                next = last.record.getInt(0) + 1;
+            }
+            if (next >= graph.size()) {
+                return;
+            }
+            channel.truncate(end);
+            channel.position(end);
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(channel)));
+            if (end == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            for (int row = next; row < graph.size(); row += 1) {
+                write(out, row, commitOf.apply(row));
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Reads the log newest first, in decreasing order of rows or of
+     * commit times.  Ordering by time merges the runs of records whose
+     * times already decrease, which for a history made on one clock is a
+     * single run, so memory grows with the number of runs and not with
+     * the number of commits.
+     * @param byTime is true to order by commit time, and by row among
+     *               commits made in the same second.
+     * @param action is called with each entry.
+     */
+    void read(boolean byTime, Consumer<Entry> action) {
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long end = validEnd(channel);
+            if (!byTime) {
+                Cursor cursor = new Cursor(channel, HEADER, end, BLOCK);
+                while (cursor.back()) {
+                    action.accept(cursor.entry());
+                }
+                return;
+            }
+            List<long[]> runs = new ArrayList<>();
+            Cursor scan = new Cursor(channel, HEADER, end, BLOCK);
+            long runEnd = end;
+            long last = Long.MAX_VALUE;
+            while (scan.back()) {
+                if (scan.time() > last) {
+                    runs.add(new long[] {scan.end, runEnd});
+                    runEnd = scan.end;
+                }
+                last = scan.time();
+            }
+            runs.add(new long[] {HEADER, runEnd});
+            int block = Math.max(MIN_BLOCK, BLOCK / runs.size());
+            PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) ->
+                a.time() != b.time() ? Long.compare(b.time(), a.time())
+                    : Long.compare(b.start, a.start));
+            for (long[] run : runs) {
+                Cursor cursor = new Cursor(channel, run[0], run[1], block);
+                if (cursor.back()) {
+                    queue.add(cursor);
+                }
+            }
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                action.accept(cursor.entry());
+                if (cursor.back()) {
+                    queue.add(cursor);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Writes a record.
+     * @param out is where it goes.
+     * @param row is the row of the commit.
+     * @param commit is the commit.
+     */
+    private static void write(DataOutputStream out, int row, Commit commit)
+            throws IOException {
+        byte[] date = commit.getDateTime().getBytes(StandardCharsets.UTF_8);
+        byte[] message = commit.getMessage().getBytes(
+                StandardCharsets.UTF_8);
+        boolean merge = commit.isMerge() && commit.getParentTwo() != null;
+        int length = 4 + 8 + Utils.UID_BYTES + 1
+            + (merge ? 2 * Utils.UID_BYTES : 0)
+            + 4 + date.length + 4 + message.length;
+        out.writeInt(length);
+        out.writeInt(row);
+        out.writeLong(commit.getTime());
+        out.write(Utils.uidToBytes(commit.getCommitId()));
+        out.writeBoolean(merge);
+        if (merge) {
+            out.write(Utils.uidToBytes(commit.getParent()));
+            out.write(Utils.uidToBytes(commit.getParentTwo()));
+        }
+        out.writeInt(date.length);
+        out.write(date);
+        out.writeInt(message.length);
+        out.write(message);
+        out.writeInt(length);
+    }
+
+    /**
+     * Finds the end of the last whole record, which is the end of the
+     * file unless a process died while appending.
+     * @param channel is the open log file.
+     * @return the offset after the last whole record, or 0 if the file is
+     *         empty.
+     */
+    private static long validEnd(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < HEADER) {
+            return 0;
+        }
+        ByteBuffer word = ByteBuffer.allocate(4);
+        if (size == HEADER || isRecord(channel, size, word)) {
+            return size;
+        }
+        long pos = HEADER;
+        while (pos + 8 <= size) {
+            word.clear();
+            channel.read(word, pos);
+            long next = pos + 8 + word.getInt(0);
+            if (word.getInt(0) < 0 || next > size
+                    || !isRecord(channel, next, word)) {
+                break;
+            }
+            pos = next;
+        }
+        return pos;
+    }
+
+    /**
+     * Determine if a record ends at an offset, by whether the lengths
+     * before and after it agree.
+     * @param channel is the open log file.
+     * @param end is the offset.
+     * @param word is a buffer of 4 bytes.
+     * @return true if there is a whole record.
+     */
+    private static boolean isRecord(FileChannel channel, long end,
+                                    ByteBuffer word) throws IOException {
+        word.clear();
+        channel.read(word, end - 4);
+        int length = word.getInt(0);
+        long start = end - 8 - length;
+        if (length < 0 || start < HEADER) {
+            return false;
+        }
+        word.clear();
+        channel.read(word, start);
+        return word.getInt(0) == length;
+    }
+
+    /** What global-log prints about a commit. */
+    static class Entry {
+        /** Row of the commit in the commit graph. */
+        int row;
+
+        /** Time of the commit in seconds since the epoch. */
+        long time;
+
+        /** SHA-1 of the commit. */
+        String id;
+
+        /** SHA-1 of the first parent of a merge commit, or null. */
+        String parent;
+
+        /** SHA-1 of the second parent of a merge commit, or null. */
+        String parentTwo;
+
+        /** Date of the commit as log prints it. */
+        String date;
+
+        /** The commit message. */
+        String message;
+    }
+
+    /** Reads the records of part of the log backwards through a buffer
+     *  holding a block of it. */
+    private static class Cursor {
+        /**
+         * Starts reading backwards from the end of part of the log.
+         * @param logChannel is the open log file.
+         * @param first is the offset of the first record to read.
+         * @param last is the offset after the last record to read.
+         * @param blockSize is the size of the buffer.
+         */
+        Cursor(FileChannel logChannel, long first, long last,
+               int blockSize) {
+            channel = logChannel;
+            lo = first;
+            start = last;
+            buffer = ByteBuffer.allocate(blockSize);
+            bufferEnd = bufferStart = last;
+        }
+
+        /**
+         * Moves to the record before the current one.
+         * @return false if there is none.
+         */
+        boolean back() throws IOException {
+            if (start <= lo) {
+                return false;
+            }
+            end = start;
+            int length = fill(end - 4, 4).getInt();
+            start = end - 8 - length;
+            record = fill(start + 4, length);
+            return true;
+        }
+
+        /**
+         * Gets the time of the current record.
+         * @return seconds since the epoch.
+         */
+        long time() {
+            return record.getLong(4);
+        }
+
+        /**
+         * Decodes the current record.
+         * @return its entry.
+         */
+        Entry entry() {
+            ByteBuffer in = record.duplicate();
+            Entry result = new Entry();
+            result.row = in.getInt();
+            result.time = in.getLong();
+            result.id = uid(in);
+            if (in.get() != 0) {
+                result.parent = uid(in);
+                result.parentTwo = uid(in);
+            }
+            result.date = string(in);
+            result.message = string(in);
+            return result;
+        }
+
+        /**
+         * Gets part of the log, reading the block that ends with it into
+         * the buffer if it is not there already.
+         * @param from is the offset of the part.
+         * @param length is its length.
+         * @return a buffer holding just that part.
+         */
+        private ByteBuffer fill(long from, int length) throws IOException {
+            if (length > buffer.capacity()) {
+                ByteBuffer big = ByteBuffer.allocate(length);
+                read(big, from);
+                big.flip();
+                return big;
+            }
+            if (from < bufferStart || from + length > bufferEnd) {
+                bufferEnd = from + length;
+                bufferStart = Math.max(0, bufferEnd - buffer.capacity());
+                buffer.clear();
+                buffer.limit((int) (bufferEnd - bufferStart));
+                read(buffer, bufferStart);
+            }
+            int pos = (int) (from - bufferStart);
+            return buffer.duplicate().position(pos).limit(pos + length)
+                .slice();
+        }
+
+        /**
+         * Fills a buffer from the log.
+         * @param into is the buffer.
+         * @param from is the offset to read from.
+         */
+        private void read(ByteBuffer into, long from) throws IOException {
+            while (into.hasRemaining()) {
+                if (channel.read(into, from + into.position()) < 0) {
+                    throw Utils.error("Corrupt commit log.");
+                }
+            }
+        }
+
+        /**
+         * Reads a raw id.
+         * @param in is the record.
+         * @return the id in hexadecimal.
+         */
+        private static String uid(ByteBuffer in) {
+            byte[] raw = new byte[Utils.UID_BYTES];
+            in.get(raw);
+            return Utils.bytesToUid(raw, 0);
+        }
+
+        /**
+         * Reads a string.
+         * @param in is the record.
+         * @return the string.
+         */
+        private static String string(ByteBuffer in) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** The open log file. */
+        private final FileChannel channel;
+
+        /** Offset of the first record to read. */
+        private final long lo;
+
+        /** Offset of the current record. */
+        private long start;
+
+        /** Offset after the current record. */
+        private long end;
+
+        /** The current record, without its lengths. */
+        private ByteBuffer record;
+
+        /** Holds part of the log. */
+        private final ByteBuffer buffer;
+
+        /** Offset of the part of the log in the buffer. */
+        private long bufferStart;
+
+        /** Offset after the part of the log in the buffer. */
+        private long bufferEnd;
+    }
+
+    /** First word of the commit log file ("GLOG"). */
+    private static final int MAGIC = 0x474c4f47;
+
+    /** Format version of the commit log file. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first record. */
+    private static final int HEADER = 8;
+
+    /** Bytes read at a time. */
+    private static final int BLOCK = 1 << 16;
+
+    /** Fewest bytes read at a time when merging many runs. */
+    private static final int MIN_BLOCK = 1 << 12;
+
+    /** The commit log file. */
+    private final File file;
+}
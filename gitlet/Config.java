@@ -0,0 +1,61 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+
+/** Settings of a repository, kept in .gitlet/config as lines of the form
+ *  KEY=VALUE.  Blank lines and lines starting with '#' are ignored, and a
+ *  missing file holds no settings.
+ *  @author Austin Ralleta
+ */
+class Config {
+    /**
+     * Reads the settings of a repository.
+     * @param gitletDir is the .gitlet directory.
+     * @return the settings.
+     */
+    static Config read(File gitletDir) {
+        Config result = new Config();
+        File file = Utils.join(gitletDir, "config");
+        if (!file.isFile()) {
+            return result;
+        }
+        for (String line : Utils.readContentsAsString(file).split("\n")) {
+            line = line.trim();
+            int equals = line.indexOf('=');
+            if (line.isEmpty() || line.startsWith("#") || equals < 0) {
+                continue;
+            }
+            result.values.put(line.substring(0, equals).trim(),
+                    line.substring(equals + 1).trim());
+        }
+        return result;
+    }
+
+    /**
+     * Gets a setting.
+     * @param key is the name of the setting.
+     * @param otherwise is the value to use if it is not set.
+     * @return the value.
+     */
+    String get(String key, String otherwise) {
+        return values.getOrDefault(key, otherwise);
+    }
+
+    /**
+     * Determine if transactions should wait for their writes to reach the
+     * disk ("durability=safe", the default) rather than only keep the
+     * repository consistent when the process dies ("durability=fast").
+     * @return true if writes are synced.
+     */
+    boolean safe() {
+        String durability = get("durability", "safe");
+        if (!durability.equals("safe") && !durability.equals("fast")) {
+            throw Utils.error("Unknown durability %s.", durability);
+        }
+        return durability.equals("safe");
+    }
+
+    /** Settings by name. */
+    private final HashMap<String, String> values = new HashMap<>();
+}
@@ -0,0 +1,231 @@
+package gitlet;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** JDK Flight Recorder events of the object store and history walks,
+ *  which a recording with the settings in gitlet.jfc enables.  Loading the
+ *  first event class costs a cold start about as much again as running a
+ *  small command, so callers get their events from the methods here, which
+ *  return null, loading nothing, until Flight Recorder has been started in
+ *  this JVM, from the command line or later through jcmd.  An event is
+ *  begun when got, and the caller fills in its fields and commits it,
+ *  which records it only if its recording settings ask for it.
+ *  @author Austin Ralleta
+ */
+class Events {
+
+    /**
+     * Determine if Flight Recorder has been started in this JVM.
+     * @return true if events may be recorded.
+     */
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Begins a blob read.
+     * @return the event, or null if nothing is recording.
+     */
+    static BlobRead blobRead() {
+        if (!recording()) {
+            return null;
+        }
+        BlobRead event = new BlobRead();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins a blob write.
+     * @return the event, or null if nothing is recording.
+     */
+    static BlobWrite blobWrite() {
+        if (!recording()) {
+            return null;
+        }
+        BlobWrite event = new BlobWrite();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins a commit load.
+     * @return the event, or null if nothing is recording.
+     */
+    static CommitLoad commitLoad() {
+        if (!recording()) {
+            return null;
+        }
+        CommitLoad event = new CommitLoad();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins a merge-base walk.
+     * @return the event, or null if nothing is recording.
+     */
+    static MergeBaseWalk mergeBaseWalk() {
+        if (!recording()) {
+            return null;
+        }
+        MergeBaseWalk event = new MergeBaseWalk();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins writing a working file.
+     * @return the event, or null if nothing is recording.
+     */
+    static CheckoutFile checkoutFile() {
+        if (!recording()) {
+            return null;
+        }
+        CheckoutFile event = new CheckoutFile();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins writing the index.
+     * @return the event, or null if nothing is recording.
+     */
+    static IndexFlush indexFlush() {
+        if (!recording()) {
+            return null;
+        }
+        IndexFlush event = new IndexFlush();
+        event.begin();
+        return event;
+    }
+
+    /** Reading the contents of a blob or tree from the object store. */
+    @Name("gitlet.BlobRead")
+    @Label("Blob Read")
+    @Category("Gitlet")
+    @Description("Contents of an object read from the object store")
+    static class BlobRead extends Event {
+        /** SHA-1 of the object. */
+        @Label("Id")
+        String id;
+
+        /** Size of the contents. */
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        /** Whether the object came from a pack rather than a loose file. */
+        @Label("Packed")
+        boolean packed;
+
+        /** Whether the contents were already in memory. */
+        @Label("Cache Hit")
+        boolean cacheHit;
+    }
+
+    /** Storing a blob or tree in the object store. */
+    @Name("gitlet.BlobWrite")
+    @Label("Blob Write")
+    @Category("Gitlet")
+    @Description("Object stored in the object store")
+    static class BlobWrite extends Event {
+        /** SHA-1 of the object. */
+        @Label("Id")
+        String id;
+
+        /** Size of the contents. */
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        /** Whether the store already had the object, so nothing was
+         *  kept.  A file the add command streams into the store is hashed
+         *  as it is copied, so the copy is made and then dropped. */
+        @Label("Existed")
+        boolean existed;
+    }
+
+    /** Reading and decoding a commit. */
+    @Name("gitlet.CommitLoad")
+    @Label("Commit Load")
+    @Category("Gitlet")
+    @Description("Commit read from its file and decoded")
+    static class CommitLoad extends Event {
+        /** Id of the commit. */
+        @Label("Id")
+        String id;
+
+        /** Size of the commit file. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /** Finding the best common ancestors of two commits. */
+    @Name("gitlet.MergeBaseWalk")
+    @Label("Merge Base Walk")
+    @Category("Gitlet")
+    @Description("Walk of the commit graph for the merge bases of two"
+            + " commits")
+    static class MergeBaseWalk extends Event {
+        /** Number of commits taken off the walk's queue. */
+        @Label("Commits Visited")
+        int visited;
+
+        /** Number of common ancestors found before removing redundant
+         *  ones. */
+        @Label("Candidates")
+        int candidates;
+
+        /** Number of best common ancestors. */
+        @Label("Bases")
+        int bases;
+    }
+
+    /** Writing a file of the working directory from the object store. */
+    @Name("gitlet.CheckoutFile")
+    @Label("Checkout File")
+    @Category("Gitlet")
+    @Description("Working file written from a stored blob")
+    static class CheckoutFile extends Event {
+        /** SHA-1 of the blob. */
+        @Label("Id")
+        String id;
+
+        /** Path of the file written. */
+        @Label("Path")
+        String path;
+
+        /** Size of the file written. */
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    /** Writing the index, the staging area. */
+    @Name("gitlet.IndexFlush")
+    @Label("Index Flush")
+    @Category("Gitlet")
+    @Description("Staging area written to the index file")
+    static class IndexFlush extends Event {
+        /** Number of entries. */
+        @Label("Entries")
+        int entries;
+
+        /** Size of the index file. */
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        /** Whether racily clean entries made it write the file twice. */
+        @Label("Racy")
+        boolean racy;
+    }
+}
@@ -0,0 +1,633 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/** The index: one sorted binary file (.gitlet/index) describing the files
+ *  the next commit will track, the files staged for addition and the files
+ *  staged for removal.  Each entry also caches the size, modification time
+ *  and inode of the working file as they were when its blob id was last
+ *  known to match, so unchanged files need not be read or hashed again.
+ *  When a file-system monitor is running, the index also keeps the
+ *  monitor token, a VALID flag on entries the monitor vouches for and the
+ *  names of untracked files, so status need not even stat them.
+ *  @author Austin Ralleta
+ */
+class Index {
+
+    /** One file in the index. */
+    static class Entry {
+        /**
+         * Constructs an entry with no cached stat data.
+         * @param name is the file name.
+         * @param blob is the SHA-1 of the file's blob.
+         * @param entryFlags is a combination of STAGED, REMOVED and VALID.
+         */
+        Entry(String name, String blob, int entryFlags) {
+            path = name;
+            id = blob;
+            flags = entryFlags;
+            size = -1;
+        }
+
+        /**
+         * Determine if this file is staged for addition.
+         * @return true if staged.
+         */
+        boolean isStaged() {
+            return (flags & STAGED) != 0;
+        }
+
+        /**
+         * Determine if this file is staged for removal.
+         * @return true if marked removed.
+         */
+        boolean isRemoved() {
+            return (flags & REMOVED) != 0;
+        }
+
+        /**
+         * Determine if the monitor vouches for this file: it matched its
+         * blob when the monitor token was taken and has not changed since.
+         * @return true if valid.
+         */
+        boolean isValid() {
+            return (flags & VALID) != 0;
+        }
+
+        /**
+         * Records the stat data of the working file, which must currently
+         * have the contents of this entry's blob.
+         * @param file is the working file.
+         */
+        void refresh(File file) {
+            setStat(stat(file));
+        }
+
+        /**
+         * Records stat data taken before the working file was hashed.
+         * @param stat is the result of Index.stat, or null.
+         */
+        void setStat(long[] stat) {
+            if (stat == null) {
+                size = -1;
+            } else {
+                size = stat[0];
+                mtime = stat[1];
+                inode = stat[2];
+            }
+        }
+
+        /** File name. */
+        final String path;
+
+        /** SHA-1 of the blob. */
+        String id;
+
+        /** STAGED, REMOVED and VALID bits. */
+        int flags;
+
+        /** Size of the working file when last known clean, or -1 if
+         *  unknown. */
+        long size;
+
+        /** Modification time in nanoseconds of the working file when last
+         *  known clean. */
+        long mtime;
+
+        /** Inode of the working file when last known clean, or 0. */
+        long inode;
+    }
+
+    /**
+     * Reads an index file.
+     * @param file is the index file.
+     * @return the index, or an empty index if FILE does not exist.
+     */
+    static Index read(File file) {
+        Index result = new Index();
+        if (!file.exists()) {
+            return result;
+        }
+        MessageDigest md = Utils.sha1Digest();
+        long start = Trace.start();
+        try (InputStream raw = new BufferedInputStream(
+                Files.newInputStream(file.toPath()))) {
+            result.timestamp = modified(file.toPath());
+            DataInputStream in = new DataInputStream(
+                    new DigestInputStream(raw, md));
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("Corrupt index.");
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw Utils.error("Corrupt index.");
+            }
+            int count = in.readInt();
+            byte[] id = new byte[Utils.UID_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                byte[] name = new byte[in.readInt()];
+                in.readFully(name);
+                in.readFully(id);
+                Entry entry = new Entry(
+                        new String(name, StandardCharsets.UTF_8),
+                        Utils.bytesToUid(id, 0), in.readByte());
+                entry.size = in.readLong();
+                entry.mtime = in.readLong();
+                entry.inode = in.readLong();
+                result.entries.put(entry.path, entry);
+            }
+            if (version >= 2) {
+                result.token = readString(in);
+                int others = in.readInt();
+                if (others >= 0) {
+                    result.untracked = new TreeSet<>();
+                    for (int i = 0; i < others; i += 1) {
+                        result.untracked.add(readString(in));
+                    }
+                }
+            }
+            byte[] expected = md.digest();
+            byte[] trailer = new byte[Utils.UID_BYTES];
+            new DataInputStream(raw).readFully(trailer);
+            if (!Arrays.equals(expected, trailer)) {
+                throw Utils.error("Corrupt index.");
+            }
+            if (start != 0) {
+                Trace.count(Trace.READ, file.length(), start);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Determine if an index file is still the one this index was last
+     * read from or written to.
+     * @param file is the index file.
+     * @return true if its modification time has not changed.
+     */
+    boolean isCurrent(File file) {
+        try {
+            return modified(file.toPath()) == timestamp;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes this index, replacing FILE atomically.
+     * @param file is the index file.
+     */
+    void write(File file) {
+        File tmp = Utils.join(file.getParentFile(), file.getName() + ".tmp");
+        writeTemporary(tmp);
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Writes this index to a file that will be renamed over the index
+     * file, which keeps its modification time.  Entries whose stat data is
+     * not older than the new file are racily clean: the working file could
+     * change again within the same timestamp without changing its stat
+     * data, so their cached size is cleared to force a hash.
+     * @param tmp is the file to write.
+     */
+    void writeTemporary(File tmp) {
+        Events.IndexFlush event = Events.indexFlush();
+        try {
+            writeTo(tmp.toPath());
+            long written = modified(tmp.toPath());
+            boolean racy = false;
+            for (Entry entry : entries.values()) {
+                if (entry.size >= 0 && entry.mtime >= written) {
+                    entry.size = -1;
+                    racy = true;
+                }
+            }
+            if (racy) {
+                writeTo(tmp.toPath());
+            }
+            timestamp = modified(tmp.toPath());
+            if (event != null) {
+                event.entries = entries.size();
+                event.size = tmp.length();
+                event.racy = racy;
+                event.commit();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Writes the entries of this index, followed by the SHA-1 of
+     * everything before it.
+     * @param path is the file to write.
+     * @throws IOException
+     */
+    private void writeTo(Path path) throws IOException {
+        MessageDigest md = Utils.sha1Digest();
+        long start = Trace.start();
+        try (OutputStream raw = new BufferedOutputStream(
+                Files.newOutputStream(path))) {
+            DataOutputStream out = new DataOutputStream(
+                    new DigestOutputStream(raw, md));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                byte[] name = entry.path.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.write(Utils.uidToBytes(entry.id));
+                out.writeByte(entry.flags);
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.inode);
+            }
+            writeString(out, token);
+            if (untracked == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(untracked.size());
+                for (String name : untracked) {
+                    writeString(out, name);
+                }
+            }
+            out.flush();
+            raw.write(md.digest());
+        }
+        if (start != 0) {
+            Trace.count(Trace.WRITE, Files.size(path), start);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     * @param in is the stream to read.
+     * @return the string, or null if it was written as null.
+     * @throws IOException
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string.
+     * @param out is the stream to write.
+     * @param text is the string, or null.
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream out, String text)
+            throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Gets an entry.
+     * @param path is the file name.
+     * @return the entry, or null if the file is not in the index.
+     */
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Adds or replaces an entry.
+     * @param entry is the new entry.
+     */
+    void put(Entry entry) {
+        entries.put(entry.path, entry);
+        if (untracked != null) {
+            untracked.remove(entry.path);
+        }
+    }
+
+    /**
+     * Removes an entry.
+     * @param path is the file name.
+     */
+    void remove(String path) {
+        entries.remove(path);
+        untracked = null;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    void clear() {
+        entries.clear();
+        forgetMonitor();
+    }
+
+    /**
+     * Gets all entries.
+     * @return the entries sorted by file name.
+     */
+    Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * Gets the files the next commit will track.
+     * @return map of file names to blob ids.
+     */
+    HashMap<String, String> tracked() {
+        HashMap<String, String> result = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            if (!entry.isRemoved()) {
+                result.put(entry.path, entry.id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the files staged for addition.
+     * @return map of file names to blob ids.
+     */
+    HashMap<String, String> staged() {
+        return withFlag(STAGED);
+    }
+
+    /**
+     * Gets the files staged for removal.
+     * @return map of file names to blob ids.
+     */
+    HashMap<String, String> removed() {
+        return withFlag(REMOVED);
+    }
+
+    /**
+     * Gets what the next commit changes from the head commit.
+     * @return map of the names of staged files to their blob ids, and of
+     *         files staged for removal to null.
+     */
+    HashMap<String, String> changes() {
+        HashMap<String, String> result = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            if (entry.isStaged()) {
+                result.put(entry.path, entry.id);
+            } else if (entry.isRemoved()) {
+                result.put(entry.path, null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the entries with a flag set.
+     * @param flag is STAGED or REMOVED.
+     * @return map of file names to blob ids.
+     */
+    private HashMap<String, String> withFlag(int flag) {
+        HashMap<String, String> result = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            if ((entry.flags & flag) != 0) {
+                result.put(entry.path, entry.id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records that the staged changes were committed: files staged for
+     * addition become plain tracked files and files staged for removal
+     * are dropped.
+     */
+    void committed() {
+        if (entries.values().removeIf(Entry::isRemoved)) {
+            untracked = null;
+        }
+        for (Entry entry : entries.values()) {
+            entry.flags &= VALID;
+        }
+    }
+
+    /**
+     * Brings the entries of some files in line with a commit that was just
+     * checked out.  Entries of files checkout left alone keep their stat
+     * data and VALID flags when they already had the commit's blob and
+     * nothing staged; written files get fresh stat data.
+     * @param changes is a map of file names to their blob ids in the
+     *                commit, or to null for files it does not track.
+     * @param written is the names of the files checkout wrote.
+     * @param workDir is the working directory.
+     */
+    void checkedOut(Map<String, String> changes, Set<String> written,
+                    File workDir) {
+        for (Map.Entry<String, String> file : changes.entrySet()) {
+            String path = file.getKey();
+            Entry prev = entries.get(path);
+            if (file.getValue() == null) {
+                entries.remove(path);
+                if (prev != null && Utils.join(workDir, path).exists()) {
+                    untracked = null;
+                }
+            } else if (prev == null || written.contains(path)
+                    || !prev.id.equals(file.getValue())
+                    || (prev.flags & (STAGED | REMOVED)) != 0) {
+                Entry entry = new Entry(path, file.getValue(), 0);
+                if (written.contains(path)) {
+                    entry.refresh(Utils.join(workDir, path));
+                }
+                put(entry);
+            }
+        }
+    }
+
+    /**
+     * Gets the monitor token up to which the VALID flags and the untracked
+     * files are known.
+     * @return the token, or null if there is none.
+     */
+    String token() {
+        return token;
+    }
+
+    /**
+     * Sets the monitor token.
+     * @param newToken is the new token.
+     */
+    void setToken(String newToken) {
+        token = newToken;
+    }
+
+    /**
+     * Gets the names of the working files that have no entry, as of the
+     * monitor token.
+     * @return the names, or null if unknown.
+     */
+    TreeSet<String> untracked() {
+        return untracked;
+    }
+
+    /**
+     * Sets the names of the working files that have no entry.
+     * @param names is the names, or null if unknown.
+     */
+    void setUntracked(TreeSet<String> names) {
+        untracked = names;
+    }
+
+    /**
+     * Discards everything learned from the monitor: the token, the VALID
+     * flags and the untracked files.
+     */
+    void forgetMonitor() {
+        token = null;
+        untracked = null;
+        for (Entry entry : entries.values()) {
+            entry.flags &= ~VALID;
+        }
+    }
+
+    /**
+     * Determine from stat data alone whether a working file still has the
+     * contents of an entry's blob.  Entries at least as new as this index
+     * file are racily clean and are never trusted.
+     * @param entry is the entry.
+     * @param file is the working file.
+     * @return true if the file is certainly unchanged; false if it must be
+     *         hashed to tell.
+     */
+    boolean unchanged(Entry entry, File file) {
+        if (entry.size < 0 || entry.mtime >= timestamp) {
+            return false;
+        }
+        return unchanged(entry, stat(file));
+    }
+
+    /**
+     * Determine from stat data already taken whether a working file still
+     * has the contents of an entry's blob.
+     * @param entry is the entry.
+     * @param stat is the result of stat for the working file.
+     * @return true if the file is certainly unchanged.
+     */
+    boolean unchanged(Entry entry, long[] stat) {
+        if (entry.size < 0 || entry.mtime >= timestamp) {
+            return false;
+        }
+        return stat != null && stat[0] == entry.size
+                && stat[1] == entry.mtime && stat[2] == entry.inode;
+    }
+
+    /**
+     * Gets the stat data of a file.
+     * @param file is the file.
+     * @return its size, modification time in nanoseconds and inode (0 if
+     *         the file system has none), or null if it does not exist.
+     */
+    static long[] stat(File file) {
+        Path path = file.toPath();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path,
+                    BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            long inode = 0;
+            if (hasInodes) {
+                try {
+                    inode = ((Number) Files.getAttribute(path, "unix:ino",
+                            LinkOption.NOFOLLOW_LINKS)).longValue();
+                } catch (UnsupportedOperationException
+                         | IllegalArgumentException excp) {
+                    hasInodes = false;
+                }
+            }
+            return new long[] {attrs.size(),
+                attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), inode};
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Gets the modification time of a file.
+     * @param path is the file.
+     * @return the time in nanoseconds.
+     * @throws IOException
+     */
+    private static long modified(Path path) throws IOException {
+        FileTime time = Files.getLastModifiedTime(path);
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+
+    /** Flag of files staged for addition. */
+    static final int STAGED = 1;
+
+    /** Flag of files staged for removal. */
+    static final int REMOVED = 2;
+
+    /** Flag of files the monitor vouches for. */
+    static final int VALID = 4;
+
+    /** First word of the index file ("GINX"). */
+    private static final int MAGIC = 0x47494e58;
+
+    /** Format version of the index file. */
+    private static final int VERSION = 2;
+
+    /** False once the file system is found to have no unix:ino. */
+    private static volatile boolean hasInodes = true;
+
+    /** Entries by file name. */
+    private TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /** Modification time in nanoseconds of the index file when it was
+     *  read or last written, or 0 for a new index. */
+    private long timestamp;
+
+    /** Monitor token, or null. */
+    private String token;
+
+    /** Names of working files without entries as of the monitor token,
+     *  or null if unknown. */
+    private TreeSet<String> untracked;
+}
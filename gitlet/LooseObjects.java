@@ -0,0 +1,203 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/** Object store keeping each object in its own file, named by its SHA-1,
+ *  in a single directory.  Files hold objects as encoded by ObjectCodec.
+ *  @author Austin Ralleta
+ */
+class LooseObjects implements ObjectStore {
+    /**
+     * Constructs a store of loose objects.
+     * @param directory is the directory holding the object files.
+     */
+    LooseObjects(File directory) {
+        dir = directory;
+    }
+
+    /**
+     * Gets the file an object is kept in.
+     * @param id is the SHA-1 of the object.
+     * @return the path of the object file.
+     */
+    File file(String id) {
+        return Utils.join(dir, id);
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return file(id).isFile();
+    }
+
+    @Override
+    public byte[] read(String id) {
+        File objectFile = file(id);
+        if (!objectFile.isFile()) {
+            return null;
+        }
+        return ObjectCodec.decode(Utils.readContents(objectFile));
+    }
+
+    @Override
+    public boolean copyTo(String id, File dest) {
+        File objectFile = file(id);
+        if (!objectFile.isFile()) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(objectFile.toPath())) {
+            ObjectCodec.copyTo(in, 0, in.size(), dest);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return true;
+    }
+
+    @Override
+    public void write(String id, byte[] contents) {
+        File objectFile = file(id);
+        if (!objectFile.exists()) {
+            Utils.writeContents(objectFile, ObjectCodec.encode(contents));
+        }
+    }
+
+    /**
+     * Stores the contents of a file as a loose object.  The file is read
+     * once, through a fixed-size buffer that is both hashed and written
+     * to a temporary object file, so memory use does not depend on the
+     * size of the file.
+     * @param source is the file to store.
+     * @param existing is the store whose objects need not be written again.
+     * @return the SHA-1 of the contents of SOURCE, and whether EXISTING
+     *         already had them.
+     */
+    Inserted insert(File source, ObjectSource existing) {
+        File tmp = Utils.join(dir, "tmp-" + Thread.currentThread().getId()
+                + "-" + System.nanoTime());
+        MessageDigest md = Utils.sha1Digest();
+        long start = Trace.start();
+        long size;
+        try (FileChannel in = FileChannel.open(source.toPath());
+             OutputStream out = Files.newOutputStream(tmp.toPath())) {
+            long left = size = in.size();
+            ByteBuffer buf = ByteBuffer.allocate(ObjectCodec.BUFFER_SIZE);
+            fill(in, buf, left);
+            int format = ObjectCodec.formatFor(buf.array(), buf.position());
+            ObjectCodec.writeHeader(out, format, left);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try {
+                OutputStream body = out;
+                if (format == ObjectCodec.DEFLATED) {
+                    body = new DeflaterOutputStream(out, deflater,
+                            ObjectCodec.BUFFER_SIZE);
+                }
+                while (buf.position() > 0) {
+                    md.update(buf.array(), 0, buf.position());
+                    body.write(buf.array(), 0, buf.position());
+                    left -= buf.position();
+                    buf.clear();
+                    fill(in, buf, left);
+                }
+                if (left != 0) {
+                    throw new IOException("file changed while being read");
+                }
+                if (body != out) {
+                    ((DeflaterOutputStream) body).finish();
+                }
+            } finally {
+                deflater.end();
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (start != 0) {
+            Trace.count(Trace.READ, size, start);
+            Trace.count(Trace.WRITE, tmp.length(), start);
+        }
+        String id = Utils.bytesToUid(md.digest(), 0);
+        boolean existed = existing.contains(id);
+        if (existed) {
+            tmp.delete();
+        } else if (!tmp.renameTo(file(id))) {
+            tmp.delete();
+            throw Utils.error("Could not store object %s.", id);
+        }
+        return new Inserted(id, existed);
+    }
+
+    /** The outcome of storing a file. */
+    static class Inserted {
+        /**
+         * Records an outcome.
+         * @param objectId is the SHA-1 of the contents.
+         * @param wasStored is true if the store already had them.
+         */
+        Inserted(String objectId, boolean wasStored) {
+            id = objectId;
+            existed = wasStored;
+        }
+
+        /** SHA-1 of the contents of the file. */
+        final String id;
+
+        /** Whether the store already had the contents, so the file's
+         *  copy was dropped. */
+        final boolean existed;
+    }
+
+    /**
+     * Reads from a channel until a buffer is full or a limit is reached.
+     * @param in is the channel to read.
+     * @param buf is the buffer to fill.
+     * @param limit is the most bytes to read.
+     * @throws IOException
+     */
+    private static void fill(FileChannel in, ByteBuffer buf, long limit)
+            throws IOException {
+        if (buf.remaining() > limit) {
+            buf.limit((int) limit);
+        }
+        while (buf.hasRemaining() && in.read(buf) > 0) {
+            continue;
+        }
+        buf.limit(buf.capacity());
+    }
+
+    /**
+     * Lists the ids of all loose objects.
+     * @return list of SHA-1 of objects in sorted order.
+     */
+    List<String> ids() {
+        List<String> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names != null) {
+            for (String name : names) {
+                if (name.length() == Utils.UID_LENGTH) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes a loose object.
+     * @param id is the SHA-1 of the object.
+     */
+    void delete(String id) {
+        file(id).delete();
+    }
+
+    /** Directory holding the object files. */
+    private File dir;
+}
@@ -1,29 +1,82 @@
 package gitlet;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Austin Ralleta
  */
 public class Main {
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+    /** Usage: java gitlet.Main [--trace] ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> ....  With --trace, or with the environment
+     *  variable GITLET_TRACE set, prints a summary of the I/O the command
+     *  did on standard error when it ends (see Trace). */
     public static void main(String... args) throws IOException {
+        String[] command = args;
+        if (args.length > 0 && args[0].equals(Trace.FLAG)) {
+            command = Arrays.copyOfRange(args, 1, args.length);
+        } else if (System.getenv(Trace.VARIABLE) != null) {
+            args = new String[args.length + 1];
+            args[0] = Trace.FLAG;
+            System.arraycopy(command, 0, args, 1, command.length);
+        }
+        if (command.length > 0 && !command[0].equals("init")
+                && !command[0].equals("monitor")
+                && !command[0].equals("serve")) {
+            int status = Client.forward(
+                    new File(System.getProperty("user.dir")), args);
+            if (status >= 0) {
+                System.exit(status);
+            }
+        }
+        run(args);
+    }
+
+    /** Runs a command in this process rather than in a server, counting
+     *  its I/O if the first argument is --trace.
+     * @param args contains [--trace] <COMMAND> <OPERAND> ....*/
+    static void run(String... args) throws IOException {
+        if (args.length == 0 || !args[0].equals(Trace.FLAG)) {
+            runCommand(args);
+            return;
+        }
+        args = Arrays.copyOfRange(args, 1, args.length);
+        Trace.begin(args.length == 0 ? "" : args[0]);
+        int status = 1;
+        try {
+            runCommand(args);
+            status = 0;
+        } catch (Exit excp) {
+            status = excp.status;
+            throw excp;
+        } finally {
+            Trace.end(status);
+        }
+    }
+
+    /** Runs a command.
+     * @param args contains <COMMAND> <OPERAND> ....*/
+    private static void runCommand(String... args) throws IOException {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
-            System.exit(0);
+            exit(0);
         } else if (args[0].equals("init")) {
             if (args.length != 1) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
             Commands.init();
         } else if (!Utils.join(System.getProperty("user.dir"),
                 ".gitlet").exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            exit(0);
         } else {
+            File gitletDir = Utils.join(System.getProperty("user.dir"),
+                    ".gitlet");
+            Transaction.recover(gitletDir);
+            Upgrade.run(gitletDir);
             restOfMain(args);
         }
     }
@@ -33,55 +86,56 @@ public class Main {
     public static void restOfMain(String... args) throws IOException {
         switch (args[0]) {
         case "add":
-            if (args.length != 2) {
+            if (args.length < 2) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
-            Commands.add(args[1]);
+            Commands.add(Arrays.copyOfRange(args, 1, args.length));
             break;
         case "commit":
             if (args.length != 2) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
             if (args[1].equals("")) {
                 System.out.println("Please enter a commit message.");
-                System.exit(0);
+                exit(0);
             }
             Commands.commit(args[1]);
             break;
         case "rm":
             if (args.length != 2) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
             Commands.rm(args[1]);
             break;
         case "log":
-            if (args.length != 1) {
-                System.out.println("Incorrect Operands");
-                System.exit(0);
-            }
-            Commands.log();
+            log(args);
             break;
         case "global-log":
-            if (args.length != 1) {
+            if (args.length > 2 || args.length == 2
+                    && !args[1].equals("--date-order")) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
-            Commands.globalLog();
+            Commands.globalLog(args.length == 2);
             break;
         case "find":
+            if (args.length == 3 && args[1].equals("--words")) {
+                Commands.findWords(args[2]);
+                break;
+            }
             if (args.length != 2) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
             Commands.find(args[1]);
             break;
         case "status":
             if (args.length != 1) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
             Commands.status();
             break;
@@ -97,14 +151,14 @@ public class Main {
         case "branch":
             if (args.length != 2) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
             Commands.branch(args[1]);
             break;
         case "rm-branch":
             if (args.length != 2) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
             Commands.rmbranch(args[1]);
             break;
@@ -116,7 +170,7 @@ public class Main {
             if (args[1].equals("--")) {
                 if (args.length != 3) {
                     System.out.println("Incorrect Operands");
-                    System.exit(0);
+                    exit(0);
                 }
                 Commands.checkout(args[2]);
                 break;
@@ -124,32 +178,111 @@ public class Main {
             if (args[2].equals("--")) {
                 if (args.length != 4) {
                     System.out.println("Incorrect Operands");
-                    System.exit(0);
+                    exit(0);
                 }
                 Commands.checkoutWithin(args[1], args[3]);
                 break;
             } else {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
                 break;
             }
         case "reset":
             if (args.length != 2) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
             Commands.reset(args[1]);
             break;
         case "merge":
             if (args.length != 2) {
                 System.out.println("Incorrect Operands");
-                System.exit(0);
+                exit(0);
             }
             Commands.merge(args[1]);
             break;
+        case "repack":
+            if (args.length != 1) {
+                System.out.println("Incorrect Operands");
+                exit(0);
+            }
+            Commands.repack();
+            break;
+        case "monitor":
+            if (args.length != 2) {
+                System.out.println("Incorrect Operands");
+                exit(0);
+            }
+            Commands.monitor(args[1]);
+            break;
+        case "serve":
+            if (args.length != 2) {
+                System.out.println("Incorrect Operands");
+                exit(0);
+            }
+            Commands.serve(args[1]);
+            break;
         default:
             System.out.println("No command with that name exists.");
-            System.exit(0);
+            exit(0);
+        }
+    }
+
+    /** Runs log [-n COUNT] [--since DATE] [--until DATE], where a DATE is
+     *  any date Commit.parseDate accepts.
+     * @param args contains log and its options.*/
+    private static void log(String... args) {
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                System.out.println("Incorrect Operands");
+                exit(0);
+            }
+            Long date = Commit.parseDate(args[i + 1]);
+            if (args[i].equals("-n") && args[i + 1].matches("\\d{1,9}")) {
+                limit = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--since") && date != null) {
+                since = date;
+            } else if (args[i].equals("--until") && date != null) {
+                until = date;
+            } else {
+                System.out.println("Incorrect Operands");
+                exit(0);
+            }
+        }
+        Commands.log(limit, since, until);
+    }
+
+    /**
+     * Ends the command that is running, as System.exit would.  In a
+     * server only the command ends, and the server goes on to the next.
+     * @param status is the exit status.
+     */
+    static void exit(int status) {
+        if (serving) {
+            throw new Exit(status);
         }
+        Trace.end(status);
+        System.exit(status);
     }
+
+    /** Thrown to end a command in a server. */
+    static class Exit extends RuntimeException {
+        /**
+         * Ends a command.
+         * @param exitStatus is the exit status of the command.
+         */
+        Exit(int exitStatus) {
+            super(null, null, false, false);
+            status = exitStatus;
+        }
+
+        /** The exit status of the command. */
+        final int status;
+    }
+
+    /** Indicates whether commands run in a server. */
+    static boolean serving = false;
 }
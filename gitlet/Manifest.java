@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The files of a commit in two flat arrays: the paths, sorted and
+ *  interned so that commits loaded together share their names, and one
+ *  packed array of the 20 raw bytes of each file's blob id.  A file is
+ *  found by binary search on the paths, and its id is compared where it
+ *  lies in the packed array, so walking a manifest makes no object per
+ *  file.
+ *  @author Austin Ralleta
+ */
+class Manifest {
+    /**
+     * Makes a manifest.
+     * @param sortedPaths is the file paths in sorted order.
+     * @param packedIds is the raw blob ids of the files in the same order.
+     */
+    private Manifest(String[] sortedPaths, byte[] packedIds) {
+        paths = sortedPaths;
+        ids = packedIds;
+    }
+
+    /**
+     * Makes a manifest from a map of file paths to hexadecimal blob ids.
+     * @param files is the map.
+     * @return the manifest.
+     */
+    static Manifest of(Map<String, String> files) {
+        Builder builder = new Builder();
+        for (Map.Entry<String, String> file
+                : new TreeMap<>(files).entrySet()) {
+            builder.add(file.getKey(), Utils.uidToBytes(file.getValue()), 0);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the number of files.
+     * @return the number of files.
+     */
+    int size() {
+        return paths.length;
+    }
+
+    /**
+     * Gets the path of a file.
+     * @param i is the position of the file.
+     * @return the path.
+     */
+    String path(int i) {
+        return paths[i];
+    }
+
+    /**
+     * Finds a file.
+     * @param path is the path of the file.
+     * @return the position of the file, or a negative number if there is
+     *         none.
+     */
+    int find(String path) {
+        return Arrays.binarySearch(paths, path);
+    }
+
+    /**
+     * Determine if a file is in the manifest.
+     * @param path is the path of the file.
+     * @return true if it is.
+     */
+    boolean contains(String path) {
+        return find(path) >= 0;
+    }
+
+    /**
+     * Gets the blob id of a file.
+     * @param i is the position of the file.
+     * @return the id.
+     */
+    ObjectId id(int i) {
+        return new ObjectId(ids, i * Utils.UID_BYTES);
+    }
+
+    /**
+     * Gets the blob id of a file in hexadecimal.
+     * @param i is the position of the file.
+     * @return the id.
+     */
+    String hex(int i) {
+        return Utils.bytesToUid(ids, i * Utils.UID_BYTES);
+    }
+
+    /**
+     * Gets the blob id of a file by path.
+     * @param path is the path of the file.
+     * @return the id in hexadecimal, or null if there is no such file.
+     */
+    String get(String path) {
+        int i = find(path);
+        return i < 0 ? null : hex(i);
+    }
+
+    /**
+     * Determine if a file has a blob, without decoding its id.
+     * @param i is the position of the file.
+     * @param hex is the hexadecimal blob id, or null.
+     * @return true if the file's blob id is HEX.
+     */
+    boolean matches(int i, String hex) {
+        return ObjectId.matches(ids, i * Utils.UID_BYTES, hex);
+    }
+
+    /** Collects the files of a manifest, which must be added in sorted
+     *  order. */
+    static class Builder {
+        /**
+         * Adds a file.
+         * @param path is the path of the file, after every path added so
+         *             far.
+         * @param raw is an array holding the blob id of the file.
+         * @param offset is the position of the id in RAW.
+         */
+        void add(String path, byte[] raw, int offset) {
+            int at = paths.size() * Utils.UID_BYTES;
+            if (at == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2,
+                        16 * Utils.UID_BYTES));
+            }
+            System.arraycopy(raw, offset, ids, at, Utils.UID_BYTES);
+            paths.add(path.intern());
+        }
+
+        /**
+         * Finishes the manifest.
+         * @return the manifest.
+         */
+        Manifest build() {
+            return new Manifest(paths.toArray(new String[0]),
+                    Arrays.copyOf(ids, paths.size() * Utils.UID_BYTES));
+        }
+
+        /** The paths added so far. */
+        private final List<String> paths = new ArrayList<>();
+
+        /** The blob ids added so far, with room to grow. */
+        private byte[] ids = new byte[0];
+    }
+
+    /** The file paths, sorted. */
+    private final String[] paths;
+
+    /** The raw blob ids of the files, UID_BYTES each, in path order. */
+    private final byte[] ids;
+}
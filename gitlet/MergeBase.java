@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Merge-base queries over the commit graph.  Walks follow both parents
+ *  of merge commits and visit commits in decreasing generation number, so
+ *  they stop as soon as no unvisited commit can change the answer instead
+ *  of walking every history back to the initial commit.  A walk for the
+ *  merge bases counts the queued commits not yet known to be stale, so
+ *  that it knows when to stop without looking through its queue.
+ *  @author Austin Ralleta
+ */
+class MergeBase {
+    /**
+     * Prepares merge-base queries.
+     * @param commitGraph is the commit graph to walk.
+     */
+    MergeBase(CommitGraph commitGraph) {
+        graph = commitGraph;
+        order = Comparator.comparingInt((Integer row) -> graph.generation(row))
+                .thenComparingLong(row -> graph.time(row))
+                .thenComparingInt(row -> row).reversed();
+    }
+
+    /**
+     * Finds the best common ancestors of two commits: the common ancestors
+     * that are not ancestors of another common ancestor.
+     * @param one is the row of one commit.
+     * @param two is the row of the other commit.
+     * @return the rows of the best common ancestors, best first.
+     */
+    List<Integer> bases(int one, int two) {
+        List<Integer> result = new ArrayList<>();
+        if (one == two) {
+            result.add(one);
+            return result;
+        }
+        Events.MergeBaseWalk event = Events.mergeBaseWalk();
+        int visited = 0;
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(order);
+        flags.put(one, ONE);
+        flags.put(two, TWO);
+        queue.add(one);
+        queue.add(two);
+        int nonStale = 2;
+        while (nonStale > 0) {
+            int row = queue.poll();
+            visited += 1;
+            int mark = flags.get(row);
+            if ((mark & STALE) == 0) {
+                nonStale -= 1;
+                if (mark == (ONE | TWO)) {
+                    result.add(row);
+                    mark |= STALE;
+                }
+            }
+            flags.put(row, mark | DONE);
+            for (int parent : new int[] {graph.parent(row),
+                                         graph.parentTwo(row)}) {
+                if (parent < 0) {
+                    continue;
+                }
+                int old = flags.getOrDefault(parent, 0);
+                int marked = old | mark;
+                if (marked == old || (old & DONE) != 0) {
+                    continue;
+                }
+                flags.put(parent, marked);
+                if (old == 0) {
+                    queue.add(parent);
+                    if ((marked & STALE) == 0) {
+                        nonStale += 1;
+                    }
+                } else if ((old & STALE) == 0 && (marked & STALE) != 0) {
+                    nonStale -= 1;
+                }
+            }
+        }
+        result.sort(order);
+        List<Integer> best = new ArrayList<>();
+        for (int candidate : result) {
+            boolean redundant = false;
+            for (int other : result) {
+                if (other != candidate && isAncestor(candidate, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                best.add(candidate);
+            }
+        }
+        if (event != null) {
+            event.visited = visited;
+            event.candidates = result.size();
+            event.bases = best.size();
+            event.commit();
+        }
+        return best;
+    }
+
+    /**
+     * Finds the merge base of two commits.  When there are several best
+     * common ancestors, as in criss-cross merges, picks the one with the
+     * highest generation number, and then the most recent.
+     * @param one is the row of one commit.
+     * @param two is the row of the other commit.
+     * @return the row of the merge base, or -1 if there is none.
+     */
+    int base(int one, int two) {
+        List<Integer> best = bases(one, two);
+        return best.isEmpty() ? -1 : best.get(0);
+    }
+
+    /**
+     * Determine if one commit is reachable from another, following both
+     * parents.  Commits whose generation is below that of ANCESTOR cannot
+     * reach it and are not visited.
+     * @param ancestor is the row of the possible ancestor.
+     * @param descendant is the row of the possible descendant.
+     * @return true if ANCESTOR is DESCENDANT or one of its ancestors.
+     */
+    boolean isAncestor(int ancestor, int descendant) {
+        int floor = graph.generation(ancestor);
+        HashSet<Integer> seen = new HashSet<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(order);
+        queue.add(descendant);
+        seen.add(descendant);
+        while (!queue.isEmpty()) {
+            int row = queue.poll();
+            if (row == ancestor) {
+                return true;
+            }
+            for (int parent : new int[] {graph.parent(row),
+                                         graph.parentTwo(row)}) {
+                if (parent >= 0 && graph.generation(parent) >= floor
+                        && seen.add(parent)) {
+                    queue.add(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Mark of commits reachable from the first commit. */
+    private static final int ONE = 1;
+
+    /** Mark of commits reachable from the second commit. */
+    private static final int TWO = 2;
+
+    /** Mark of commits reachable from a common ancestor already found. */
+    private static final int STALE = 4;
+
+    /** Mark of commits the walk has taken off its queue.  Every child of
+     *  a commit has a higher generation and is taken off first, so a
+     *  commit's marks are final by then, and it is queued only once. */
+    private static final int DONE = 8;
+
+    /** The commit graph. */
+    private CommitGraph graph;
+
+    /** Order of walks: highest generation, then latest, then last row. */
+    private Comparator<Integer> order;
+}
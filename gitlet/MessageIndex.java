@@ -0,0 +1,588 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** An inverted index of commit messages: each word of a message, folded
+ *  to lower case, maps to the rows in the commit graph of the commits
+ *  whose messages have it, and so does a key made from the SHA-1 of the
+ *  whole message.  The index is a chain of memory-mapped segments in the
+ *  messages directory, each covering a range of rows and named FIRST-END
+ *  for the rows FIRST up to END.  Each commit adds a segment for its row,
+ *  and whenever a segment covers no more than twice the rows of the one
+ *  after it the two are merged, so there are only logarithmically many
+ *  segments, and each row is copied only logarithmically many times.  A
+ *  lookup binary searches each segment's sorted words, and never reads
+ *  more of the index than the words it looks for.  Rows the chain does not
+ *  cover, as in a repository made before the index, are indexed from
+ *  their commits the first time the index is used.
+ *  @author Austin Ralleta
+ */
+class MessageIndex {
+    /**
+     * Opens the message index of a repository.
+     * @param indexDir is the messages directory.
+     * @param commitGraph is the commit graph, whose rows are indexed.
+     * @param messageOf gets the message of the commit in a row.
+     */
+    MessageIndex(File indexDir, CommitGraph commitGraph,
+                 IntFunction<String> messageOf) {
+        dir = indexDir;
+        graph = commitGraph;
+        messages = messageOf;
+    }
+
+    /**
+     * Indexes every row of the commit graph not yet indexed.
+     */
+    void update() {
+        List<Segment> chain = open();
+        int covered = chain.isEmpty() ? 0 : chain.get(chain.size() - 1).end;
+        int size = graph.size();
+        if (covered > size) {
+            for (Segment segment : chain) {
+                segment.file.delete();
+            }
+            chain.clear();
+            covered = 0;
+        }
+        dir.mkdirs();
+        while (covered < size) {
+            int end = Math.min(size, covered + BATCH);
+            TreeMap<byte[], Rows> postings =
+                new TreeMap<>(Arrays::compareUnsigned);
+            for (int row = covered; row < end; row += 1) {
+                for (String key : keys(messages.apply(row))) {
+                    postings.computeIfAbsent(
+                            key.getBytes(StandardCharsets.UTF_8),
+                            k -> new Rows()).add(row);
+                }
+            }
+            try (SegmentWriter out = new SegmentWriter(covered, end)) {
+                for (Map.Entry<byte[], Rows> entry : postings.entrySet()) {
+                    out.add(entry.getKey(), entry.getValue());
+                }
+                chain.add(out.finish());
+            }
+            covered = end;
+            merge(chain);
+        }
+        segments = chain;
+    }
+
+    /**
+     * Finds the commits that may have a message.
+     * @param message is the whole message.
+     * @return the rows of the commits, in increasing order, which include
+     *         all those with MESSAGE and rarely any other.
+     */
+    int[] exact(String message) {
+        return lookup(exactKey(message), false);
+    }
+
+    /**
+     * Finds the commits whose messages have every word of a query.  A word
+     * of the query ending in * matches any word that starts with it.
+     * @param query is the words to look for.
+     * @return the rows of the commits, in increasing order.
+     */
+    int[] search(String query) {
+        int[] result = null;
+        for (String word : query.trim().split("\\s+")) {
+            List<String> tokens = tokens(word);
+            for (int i = 0; i < tokens.size(); i += 1) {
+                boolean prefix = word.endsWith("*")
+                    && i == tokens.size() - 1;
+                int[] rows = lookup(tokens.get(i), prefix);
+                result = result == null ? rows : intersect(result, rows);
+            }
+        }
+        return result == null ? new int[0] : result;
+    }
+
+    /**
+     * Splits a message into its words, folded to lower case.  A word is a
+     * run of letters and digits, cut to MAX_TOKEN characters.
+     * @param text is the message.
+     * @return its distinct words, in the order they first appear.
+     */
+    static List<String> tokens(String text) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        String folded = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i += 1) {
+            boolean inWord = i < folded.length()
+                && Character.isLetterOrDigit(folded.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                result.add(folded.substring(start,
+                        Math.min(i, start + MAX_TOKEN)));
+                start = -1;
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Gets the keys a message is indexed under.
+     * @param message is the message.
+     * @return its words and its exact key.
+     */
+    private static List<String> keys(String message) {
+        List<String> result = tokens(message);
+        result.add(exactKey(message));
+        return result;
+    }
+
+    /**
+     * Gets the key of a whole message, which no word can be equal to.
+     * @param message is the message.
+     * @return "=" followed by part of the SHA-1 of MESSAGE.
+     */
+    private static String exactKey(String message) {
+        return "=" + Utils.sha1(message).substring(0, EXACT_DIGITS);
+    }
+
+    /**
+     * Looks up a key in every segment, after indexing any new rows.
+     * @param key is the key.
+     * @param prefix is true to look up every key starting with KEY.
+     * @return the rows indexed under the key or keys, in increasing
+     *         order.
+     */
+    private int[] lookup(String key, boolean prefix) {
+        if (segments == null) {
+            update();
+        }
+        byte[] raw = key.getBytes(StandardCharsets.UTF_8);
+        Rows result = new Rows();
+        for (Segment segment : segments) {
+            segment.lookup(raw, prefix, result);
+        }
+        return Arrays.copyOf(result.rows, result.size);
+    }
+
+    /**
+     * Opens the chain of segments that covers the most rows from row 0,
+     * deleting any segment that a segment of the chain covers.
+     * @return the segments, in increasing order of rows.
+     */
+    private List<Segment> open() {
+        TreeMap<Integer, File> longest = new TreeMap<>();
+        TreeMap<Integer, Integer> ends = new TreeMap<>();
+        String[] names = dir.list();
+        for (String name : names == null ? new String[0] : names) {
+            Matcher m = NAME.matcher(name);
+            if (m.matches()) {
+                int first = Integer.parseInt(m.group(1));
+                int end = Integer.parseInt(m.group(2));
+                if (end > first && end > ends.getOrDefault(first, -1)) {
+                    ends.put(first, end);
+                    longest.put(first, new File(dir, name));
+                }
+            }
+        }
+        List<Segment> result = new ArrayList<>();
+        int covered = 0;
+        while (longest.containsKey(covered)) {
+            Segment segment = Segment.map(longest.get(covered));
+            if (segment == null) {
+                break;
+            }
+            result.add(segment);
+            covered = segment.end;
+        }
+        for (String name : names == null ? new String[0] : names) {
+            Matcher m = NAME.matcher(name);
+            if (m.matches() && Integer.parseInt(m.group(2)) <= covered
+                    && !isChained(result, name)) {
+                new File(dir, name).delete();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determine if a segment file is part of a chain.
+     * @param chain is the chain.
+     * @param name is the name of the file.
+     * @return true if a segment of CHAIN is that file.
+     */
+    private static boolean isChained(List<Segment> chain, String name) {
+        for (Segment segment : chain) {
+            if (segment.file.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges the last two segments of a chain while the first of them
+     * covers no more than twice the rows of the second.
+     * @param chain is the chain, which is changed to hold the merged
+     *              segments.
+     */
+    private void merge(List<Segment> chain) {
+        while (chain.size() >= 2) {
+            Segment newer = chain.get(chain.size() - 1);
+            Segment older = chain.get(chain.size() - 2);
+            if (older.end - older.first > 2 * (newer.end - newer.first)) {
+                return;
+            }
+            Segment merged;
+            try (SegmentWriter out = new SegmentWriter(older.first,
+                    newer.end)) {
+                int i = 0;
+                int j = 0;
+                while (i < older.count || j < newer.count) {
+                    int cmp = i == older.count ? 1
+                        : j == newer.count ? -1
+                        : Arrays.compareUnsigned(older.key(i),
+                                newer.key(j));
+                    Rows rows = new Rows();
+                    byte[] key = cmp <= 0 ? older.key(i) : newer.key(j);
+                    if (cmp <= 0) {
+                        older.rows(i, rows);
+                        i += 1;
+                    }
+                    if (cmp >= 0) {
+                        newer.rows(j, rows);
+                        j += 1;
+                    }
+                    out.add(key, rows);
+                }
+                merged = out.finish();
+            }
+            chain.remove(chain.size() - 1);
+            chain.set(chain.size() - 1, merged);
+            older.file.delete();
+            newer.file.delete();
+        }
+    }
+
+    /**
+     * Intersects two lists of rows.
+     * @param a is a list in increasing order.
+     * @param b is another.
+     * @return the rows in both, in increasing order.
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n] = a[i];
+                n += 1;
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** A growing list of rows. */
+    private static class Rows {
+        /**
+         * Adds a row.
+         * @param row is the row.
+         */
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(8, size * 2));
+            }
+            rows[size] = row;
+            size += 1;
+        }
+
+        /**
+         * Sorts the rows added since an earlier size and drops repeats.
+         * @param from is the earlier size.
+         */
+        void sortFrom(int from) {
+            Arrays.sort(rows, from, size);
+            int n = from;
+            for (int i = from; i < size; i += 1) {
+                if (n == from || rows[n - 1] != rows[i]) {
+                    rows[n] = rows[i];
+                    n += 1;
+                }
+            }
+            size = n;
+        }
+
+        /** The rows. */
+        private int[] rows = new int[0];
+
+        /** Number of rows. */
+        private int size;
+    }
+
+    /** A mapped segment file.  It holds the magic word "GMSG", a version,
+     *  the rows FIRST and END it covers, and then the keys in increasing
+     *  order of their UTF-8 bytes, each as its length, its bytes, the
+     *  number of its rows and the rows in increasing order.  Last come the
+     *  offset of each key and the number of keys. */
+    private static class Segment {
+        /**
+         * Maps a segment file.
+         * @param segmentFile is the file.
+         * @return the segment, or null if the file is not a segment.
+         */
+        static Segment map(File segmentFile) {
+            MappedByteBuffer table;
+            try (FileChannel channel = FileChannel.open(
+                    segmentFile.toPath())) {
+                if (channel.size() < HEADER + 4) {
+                    return null;
+                }
+                table = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (table.getInt(0) != MAGIC || table.getInt(4) != VERSION) {
+                return null;
+            }
+            return new Segment(segmentFile, table);
+        }
+
+        /**
+         * Makes a segment.
+         * @param segmentFile is its file.
+         * @param mapped is the mapped file.
+         */
+        private Segment(File segmentFile, MappedByteBuffer mapped) {
+            file = segmentFile;
+            table = mapped;
+            first = table.getInt(8);
+            end = table.getInt(12);
+            count = table.getInt(table.capacity() - 4);
+            offsets = table.capacity() - 4 - 4 * count;
+        }
+
+        /**
+         * Gets a key.
+         * @param i is the position of the key.
+         * @return its UTF-8 bytes.
+         */
+        byte[] key(int i) {
+            int pos = table.getInt(offsets + 4 * i);
+            byte[] result = new byte[table.getShort(pos) & 0xffff];
+            table.get(pos + 2, result);
+            return result;
+        }
+
+        /**
+         * Adds the rows of a key to a list.
+         * @param i is the position of the key.
+         * @param result is the list.
+         */
+        void rows(int i, Rows result) {
+            int pos = table.getInt(offsets + 4 * i);
+            pos += 2 + (table.getShort(pos) & 0xffff);
+            int n = table.getInt(pos);
+            for (int k = 0; k < n; k += 1) {
+                result.add(table.getInt(pos + 4 + 4 * k));
+            }
+        }
+
+        /**
+         * Adds the rows indexed under a key to a list.
+         * @param key is the key.
+         * @param prefix is true to add those of every key starting with
+         *               KEY.
+         * @param result is the list.
+         */
+        void lookup(byte[] key, boolean prefix, Rows result) {
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (Arrays.compareUnsigned(key(mid), key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int from = result.size;
+            for (int i = lo; i < count; i += 1) {
+                byte[] k = key(i);
+                if (prefix ? k.length < key.length
+                        || Arrays.compare(k, 0, key.length, key, 0,
+                                key.length) != 0
+                        : !Arrays.equals(k, key)) {
+                    break;
+                }
+                rows(i, result);
+                if (!prefix) {
+                    break;
+                }
+            }
+            result.sortFrom(from);
+        }
+
+        /** The segment file. */
+        final File file;
+
+        /** First row covered. */
+        final int first;
+
+        /** Row after the last row covered. */
+        final int end;
+
+        /** Number of keys. */
+        final int count;
+
+        /** Offset of the table of key offsets. */
+        private final int offsets;
+
+        /** The mapped file. */
+        private final MappedByteBuffer table;
+    }
+
+    /** Writes a new segment to a temporary file, which finish renames to
+     *  the segment's name. */
+    private class SegmentWriter implements AutoCloseable {
+        /**
+         * Starts a segment.
+         * @param firstRow is the first row it covers.
+         * @param endRow is the row after the last row it covers.
+         */
+        SegmentWriter(int firstRow, int endRow) {
+            name = firstRow + "-" + endRow;
+            tmp = new File(dir, name + "-" + ProcessHandle.current().pid()
+                    + ".tmp");
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(tmp.toPath())));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(firstRow);
+                out.writeInt(endRow);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /**
+         * Writes a key and its rows, after any key less than it.
+         * @param key is the key.
+         * @param rows is its rows in increasing order.
+         */
+        void add(byte[] key, Rows rows) {
+            offsets.add(out.size());
+            try {
+                out.writeShort(key.length);
+                out.write(key);
+                out.writeInt(rows.size);
+                for (int i = 0; i < rows.size; i += 1) {
+                    out.writeInt(rows.rows[i]);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /**
+         * Finishes the segment and renames it into place.
+         * @return the segment.
+         */
+        Segment finish() {
+            File file = new File(dir, name);
+            try {
+                for (int i = 0; i < offsets.size; i += 1) {
+                    out.writeInt(offsets.rows[i]);
+                }
+                out.writeInt(offsets.size);
+                out.close();
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return Segment.map(file);
+        }
+
+        /**
+         * Deletes the temporary file if the segment was not finished.
+         */
+        @Override
+        public void close() {
+            try {
+                out.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            tmp.delete();
+        }
+
+        /** Name of the segment. */
+        private final String name;
+
+        /** The temporary file. */
+        private final File tmp;
+
+        /** The stream writing it. */
+        private DataOutputStream out;
+
+        /** Offset of each key written. */
+        private final Rows offsets = new Rows();
+    }
+
+    /** Most characters of a word that are indexed. */
+    static final int MAX_TOKEN = 64;
+
+    /** Most rows indexed into one segment when catching up. */
+    private static final int BATCH = 4096;
+
+    /** Hexadecimal digits of a message's SHA-1 in its exact key. */
+    private static final int EXACT_DIGITS = 16;
+
+    /** Names of segment files. */
+    private static final Pattern NAME = Pattern.compile("(\\d+)-(\\d+)");
+
+    /** First word of a segment file ("GMSG"). */
+    private static final int MAGIC = 0x474d5347;
+
+    /** Format version of segment files. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first key of a segment. */
+    private static final int HEADER = 16;
+
+    /** The messages directory. */
+    private final File dir;
+
+    /** The commit graph. */
+    private final CommitGraph graph;
+
+    /** Gets the message of the commit in a row. */
+    private final IntFunction<String> messages;
+
+    /** The chain of segments, or null until first use. */
+    private List<Segment> segments;
+}
@@ -0,0 +1,556 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** The file-system monitor: an optional background process that watches
+ *  the working directory and its subdirectories with a WatchService and
+ *  appends the name of every file that changes to a journal in
+ *  .gitlet/monitor.  The journal starts with a line naming the monitor
+ *  instance, and a token "INSTANCE:OFFSET" stored in the index marks how
+ *  far into the journal a command has looked.  A command asks only for the
+ *  files named after its token instead of examining the whole working
+ *  directory.
+ *
+ *  A command first creates a cookie file in .gitlet/monitor and waits for
+ *  the monitor to journal it, so every change made before the command
+ *  started is in the journal.  Whenever the monitor is not running, was
+ *  restarted, lost events to an overflow or rotated its journal, the query
+ *  returns no change set and the command falls back to a full scan.
+ *  @author Austin Ralleta
+ */
+class Monitor {
+
+    /** The answer to a query. */
+    static class Changes {
+        /**
+         * Records an answer.
+         * @param paths is the changed files, or null if anything may have
+         *              changed.
+         * @param newToken is the token to store in the index.
+         */
+        Changes(Set<String> paths, String newToken) {
+            changed = paths;
+            token = newToken;
+        }
+
+        /** Names of the files changed since the old token, or null if
+         *  every file must be examined. */
+        final Set<String> changed;
+
+        /** Token marking the end of the changes. */
+        final String token;
+    }
+
+    /**
+     * Starts a monitor for a working directory in a new background
+     * process, unless one is running already.
+     * @param workDir is the working directory.
+     */
+    static void start(File workDir) {
+        File dir = directory(workDir);
+        if (isRunning(dir)) {
+            System.out.println("The monitor is already running.");
+            return;
+        }
+        String java = ProcessHandle.current().info().command()
+                .orElse("java");
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"), "gitlet.Main",
+                "monitor", "run");
+        builder.directory(workDir);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        try {
+            builder.start();
+            long deadline = System.nanoTime() + START_WAIT;
+            while (!isRunning(dir) && System.nanoTime() < deadline) {
+                Thread.sleep(POLL_MILLIS);
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!isRunning(dir)) {
+            System.out.println("The monitor did not start.");
+        }
+    }
+
+    /**
+     * Asks a running monitor to stop.
+     * @param workDir is the working directory.
+     */
+    static void stop(File workDir) {
+        File dir = directory(workDir);
+        if (!isRunning(dir)) {
+            System.out.println("The monitor is not running.");
+            return;
+        }
+        try {
+            Files.write(Utils.join(dir, STOP).toPath(), new byte[0]);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Runs a monitor in this process until it is stopped.
+     * @param workDir is the working directory.
+     */
+    static void run(File workDir) {
+        File dir = directory(workDir);
+        dir.mkdir();
+        Utils.join(dir, STOP).delete();
+        try (FileChannel lockChannel = FileChannel.open(
+                Utils.join(dir, LOCK).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                System.out.println("The monitor is already running.");
+                return;
+            }
+            new Monitor(workDir.toPath(), dir).watch();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Asks the monitor of a working directory which files changed since a
+     * token.
+     * @param workDir is the working directory.
+     * @param token is the token stored in the index, or null.
+     * @return the changes, or null if no monitor is running or it did not
+     *         answer in time.
+     */
+    static Changes query(File workDir, String token) {
+        File dir = directory(workDir);
+        if (!isRunning(dir)) {
+            return null;
+        }
+        String cookie = COOKIE + ProcessHandle.current().pid() + "-"
+                + System.nanoTime();
+        File cookieFile = Utils.join(dir, cookie);
+        JournalReader reader = new JournalReader(Utils.join(dir, JOURNAL),
+                token, cookie);
+        try {
+            Files.write(cookieFile.toPath(), new byte[0]);
+            long deadline = System.nanoTime() + QUERY_WAIT;
+            do {
+                Changes result = reader.poll();
+                if (result != null) {
+                    return result;
+                }
+                Thread.sleep(POLL_MILLIS);
+            } while (System.nanoTime() < deadline);
+            return null;
+        } catch (IOException | InterruptedException excp) {
+            return null;
+        } finally {
+            cookieFile.delete();
+        }
+    }
+
+    /** Reads the journal for a query, from a token up to a cookie.  Each
+     *  poll reads only what was appended since the last one, and starts
+     *  over if the journal was rotated in between. */
+    private static class JournalReader {
+        /**
+         * Prepares to read a journal.
+         * @param journalFile is the journal file.
+         * @param oldToken is the old token, or null.
+         * @param cookieName is the name of the cookie file to wait for.
+         */
+        JournalReader(File journalFile, String oldToken, String cookieName) {
+            journal = journalFile;
+            token = oldToken;
+            cookie = cookieName;
+        }
+
+        /**
+         * Reads the lines appended to the journal since the last poll.
+         * @return the changes, or null if the cookie is not journaled yet.
+         * @throws IOException
+         */
+        Changes poll() throws IOException {
+            if (!journal.exists()) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(journal.toPath())) {
+                long size = channel.size();
+                byte[] header = read(channel, 0,
+                        (int) Math.min(size, HEADER_LIMIT));
+                int headerEnd = lineEnd(header, 0, header.length);
+                if (headerEnd < 0) {
+                    return null;
+                }
+                String name = new String(header, 0, headerEnd,
+                        StandardCharsets.UTF_8);
+                if (!name.equals(instance)) {
+                    restart(name, headerEnd + 1, size);
+                }
+                byte[] contents = read(channel, pos, (int) (size - pos));
+                int lineStart = 0;
+                for (int end; (end = lineEnd(contents, lineStart,
+                        contents.length)) >= 0; lineStart = end + 1) {
+                    String line = new String(contents, lineStart + 1,
+                            Math.max(0, end - lineStart - 1),
+                            StandardCharsets.UTF_8);
+                    switch (contents[lineStart]) {
+                    case CHANGED:
+                        changed.add(line);
+                        break;
+                    case OVERFLOW:
+                        complete = false;
+                        break;
+                    case SYNC:
+                        if (line.equals(cookie)) {
+                            return new Changes(complete ? changed : null,
+                                    instance + ":" + (pos + end + 1));
+                        }
+                        break;
+                    default:
+                        complete = false;
+                        break;
+                    }
+                }
+                pos += lineStart;
+                return null;
+            }
+        }
+
+        /**
+         * Starts reading a journal of a new instance from its first line
+         * after the header, or from the old token if it is of the same
+         * instance.
+         * @param name is the instance named in the header.
+         * @param first is the offset of the first line after the header.
+         * @param size is the size of the journal.
+         */
+        private void restart(String name, long first, long size) {
+            instance = name;
+            pos = first;
+            complete = false;
+            changed.clear();
+            if (token != null) {
+                int colon = token.lastIndexOf(':');
+                if (colon > 0 && token.substring(0, colon).equals(name)) {
+                    long offset = Long.parseLong(token.substring(colon + 1));
+                    if (offset >= first && offset <= size) {
+                        pos = offset;
+                        complete = true;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reads part of the journal.
+         * @param channel is the open journal.
+         * @param from is the offset to read from.
+         * @param length is the number of bytes to read.
+         * @return the bytes read, fewer than LENGTH if the journal ends
+         *         first.
+         * @throws IOException
+         */
+        private static byte[] read(FileChannel channel, long from,
+                                   int length) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(Math.max(0, length));
+            while (buf.hasRemaining()
+                    && channel.read(buf, from + buf.position()) >= 0) {
+                continue;
+            }
+            return Arrays.copyOf(buf.array(), buf.position());
+        }
+
+        /**
+         * Finds the end of a line.
+         * @param contents is the text.
+         * @param from is the start of the line.
+         * @param limit is the end of the text.
+         * @return the position of the newline, or -1 if the line is not
+         *         complete.
+         */
+        private static int lineEnd(byte[] contents, int from, int limit) {
+            for (int i = from; i < limit; i += 1) {
+                if (contents[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** The journal file. */
+        private final File journal;
+
+        /** The old token, or null. */
+        private final String token;
+
+        /** Name of the cookie file waited for. */
+        private final String cookie;
+
+        /** Instance of the journal read so far, or null. */
+        private String instance;
+
+        /** Offset in the journal of the first line not yet read. */
+        private long pos;
+
+        /** Whether CHANGED holds every change since the old token. */
+        private boolean complete;
+
+        /** Files named in the lines read so far. */
+        private final Set<String> changed = new HashSet<>();
+    }
+
+    /**
+     * Determine if a monitor holds the lock of a monitor directory.
+     * @param dir is the monitor directory.
+     * @return true if a monitor is running.
+     */
+    static boolean isRunning(File dir) {
+        File lockFile = Utils.join(dir, LOCK);
+        if (!lockFile.exists()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(),
+                StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException excp) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the monitor directory of a working directory.
+     * @param workDir is the working directory.
+     * @return the .gitlet/monitor directory.
+     */
+    private static File directory(File workDir) {
+        return Utils.join(workDir, ".gitlet", "monitor");
+    }
+
+    /**
+     * Prepares a monitor.
+     * @param workDir is the working directory.
+     * @param dir is the monitor directory.
+     */
+    private Monitor(Path workDir, File dir) {
+        work = workDir;
+        monitorDir = dir.toPath();
+        journalFile = Utils.join(dir, JOURNAL).toPath();
+    }
+
+    /**
+     * Journals changes until a stop file appears or the working directory
+     * goes away.
+     * @throws IOException
+     */
+    private void watch() throws IOException {
+        try (WatchService watcher = FileSystems.getDefault()
+                .newWatchService()) {
+            rotate();
+            WatchKey workKey = register(watcher, work, "", false);
+            monitorDir.register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+            while (true) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        append(OVERFLOW, "");
+                        continue;
+                    }
+                    String name = event.context().toString();
+                    String prefix = watched.get(key);
+                    if (prefix == null) {
+                        if (name.equals(STOP)) {
+                            return;
+                        } else if (name.startsWith(COOKIE)) {
+                            append(SYNC, name);
+                        }
+                    } else if (!(prefix.isEmpty() && name.equals(".gitlet"))) {
+                        append(CHANGED, prefix + name);
+                        Path path = work.resolve(prefix + name);
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                                && Files.isDirectory(path,
+                                        LinkOption.NOFOLLOW_LINKS)) {
+                            register(watcher, path, prefix + name + "/",
+                                    true);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    if (key == workKey) {
+                        return;
+                    }
+                    watched.remove(key);
+                }
+                if (journal.size() > JOURNAL_LIMIT) {
+                    rotate();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            return;
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+            Files.deleteIfExists(journalFile);
+            Files.deleteIfExists(monitorDir.resolve(STOP));
+        }
+    }
+
+    /**
+     * Watches a directory and every directory below it, leaving out
+     * .gitlet.
+     * @param watcher is the watch service.
+     * @param dir is the directory.
+     * @param prefix is the name of the directory followed by '/', or empty
+     *               for the working directory.
+     * @param created indicates whether the directory was just created, so
+     *                files made in it before it was watched are journaled.
+     * @return the watch key of the directory.
+     * @throws IOException
+     */
+    private WatchKey register(WatchService watcher, Path dir, String prefix,
+                              boolean created) throws IOException {
+        WatchKey key = dir.register(watcher, WORK_EVENTS);
+        watched.put(key, prefix);
+        File[] files = dir.toFile().listFiles();
+        if (files == null) {
+            return key;
+        }
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (Files.isDirectory(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+                if (!name.equals(".gitlet")) {
+                    register(watcher, file.toPath(), name + "/", created);
+                }
+            } else if (created) {
+                append(CHANGED, name);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Starts a new, empty journal under a new instance name, which makes
+     * every older token stale.
+     * @throws IOException
+     */
+    private void rotate() throws IOException {
+        Path tmp = monitorDir.resolve(JOURNAL + ".tmp");
+        String instance = Long.toHexString(new Random().nextLong())
+                + Long.toHexString(System.currentTimeMillis());
+        Files.write(tmp, (instance + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, journalFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        if (journal != null) {
+            journal.close();
+        }
+        journal = new RandomAccessFile(journalFile.toFile(), "rw")
+                .getChannel();
+        journal.position(journal.size());
+    }
+
+    /**
+     * Appends a line to the journal.
+     * @param kind is CHANGED, OVERFLOW or SYNC.
+     * @param text is the rest of the line.
+     * @throws IOException
+     */
+    private void append(byte kind, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer line = ByteBuffer.allocate(bytes.length + 2);
+        line.put(kind).put(bytes).put((byte) '\n').flip();
+        while (line.hasRemaining()) {
+            journal.write(line);
+        }
+    }
+
+    /** Events watched in the working directory and its subdirectories. */
+    private static final WatchEvent.Kind<?>[] WORK_EVENTS = {
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE,
+        StandardWatchEventKinds.ENTRY_MODIFY
+    };
+
+    /** Journal line kind of a changed file. */
+    private static final byte CHANGED = '+';
+
+    /** Journal line kind of lost events. */
+    private static final byte OVERFLOW = '!';
+
+    /** Journal line kind of a cookie. */
+    private static final byte SYNC = '?';
+
+    /** Name of the journal file. */
+    private static final String JOURNAL = "journal";
+
+    /** Name of the file a running monitor keeps locked. */
+    private static final String LOCK = "lock";
+
+    /** Name of the file that stops a monitor. */
+    private static final String STOP = "stop";
+
+    /** Prefix of cookie file names. */
+    private static final String COOKIE = "cookie-";
+
+    /** Most bytes read looking for the end of the journal's header. */
+    private static final int HEADER_LIMIT = 256;
+
+    /** Journal size past which the journal is started over. */
+    private static final long JOURNAL_LIMIT = 1 << 20;
+
+    /** Nanoseconds a query waits for its cookie before giving up. */
+    private static final long QUERY_WAIT = 500_000_000L;
+
+    /** Nanoseconds start waits for the new monitor to take its lock. */
+    private static final long START_WAIT = 5_000_000_000L;
+
+    /** Milliseconds between polls of the journal or the lock. */
+    private static final long POLL_MILLIS = 1;
+
+    /** The working directory. */
+    private final Path work;
+
+    /** The monitor directory. */
+    private final Path monitorDir;
+
+    /** The journal file. */
+    private final Path journalFile;
+
+    /** Channel appending to the journal. */
+    private FileChannel journal;
+
+    /** Names of the watched directories of the working tree, each
+     *  followed by '/', by watch key; the working directory is empty. */
+    private final HashMap<WatchKey, String> watched = new HashMap<>();
+}
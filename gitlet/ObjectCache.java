@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A cache of values read from the repository, keyed by their SHA-1 ids.
+ *  What an id names never changes, so entries need no invalidation and
+ *  live as long as the process, which for a command server is many
+ *  commands.  Each entry has a weight, about the bytes it holds, and the
+ *  least recently used entries are evicted to keep the total weight within
+ *  a capacity.  Values too heavy to be worth keeping are not cached.  The
+ *  counters of hits and misses are kept for the life of the process.
+ *  @author Austin Ralleta
+ *  @param <V> is the type of the values.
+ */
+class ObjectCache<V> {
+
+    /** Blobs and trees read from the object store. */
+    static final ObjectCache<byte[]> OBJECTS = new ObjectCache<>(32 << 20);
+
+    /** Commits read from their files. */
+    static final ObjectCache<Commit> COMMITS = new ObjectCache<>(8 << 20);
+
+    /**
+     * Makes an empty cache.
+     * @param maxWeight is the most total weight the cache holds.
+     */
+    ObjectCache(long maxWeight) {
+        capacity = maxWeight;
+    }
+
+    /**
+     * Gets a cached value, making it the most recently used.
+     * @param id is its id.
+     * @return the value, or null if it is not cached.
+     */
+    synchronized V get(String id) {
+        Entry<V> entry = entries.get(id);
+        if (entry == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return entry.value;
+    }
+
+    /**
+     * Caches a value, evicting the least recently used values as needed.
+     * @param id is its id.
+     * @param value is the value.
+     * @param weight is about the number of bytes it holds.
+     */
+    synchronized void put(String id, V value, long weight) {
+        if (weight > capacity / MAX_SHARE) {
+            return;
+        }
+        Entry<V> old = entries.put(id, new Entry<>(value, weight));
+        if (old != null) {
+            total -= old.weight;
+        }
+        total += weight;
+        Iterator<Entry<V>> oldest = entries.values().iterator();
+        while (total > capacity) {
+            total -= oldest.next().weight;
+            oldest.remove();
+            evictions += 1;
+        }
+    }
+
+    /**
+     * Changes the weight of a value that grew after it was cached.
+     * @param id is its id.
+     * @param value is the value, which is only reweighed if it is the one
+     *              cached.
+     * @param weight is its new weight.
+     */
+    synchronized void reweigh(String id, V value, long weight) {
+        Entry<V> entry = entries.get(id);
+        if (entry == null || entry.value != value) {
+            return;
+        }
+        entries.remove(id);
+        total -= entry.weight;
+        put(id, value, weight);
+    }
+
+    /**
+     * Empties the cache, keeping its counters.
+     */
+    synchronized void clear() {
+        entries.clear();
+        total = 0;
+    }
+
+    /**
+     * Gets the number of lookups that found their value.
+     * @return the hits.
+     */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that did not.
+     * @return the misses.
+     */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of values evicted to make room.
+     * @return the evictions.
+     */
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the total weight of the cached values.
+     * @return the weight.
+     */
+    synchronized long weight() {
+        return total;
+    }
+
+    /**
+     * Gets the number of cached values.
+     * @return the number.
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /** A cached value and its weight.
+     *  @param <V> is the type of the value. */
+    private static class Entry<V> {
+        /**
+         * Makes an entry.
+         * @param theValue is the value.
+         * @param theWeight is its weight.
+         */
+        Entry(V theValue, long theWeight) {
+            value = theValue;
+            weight = theWeight;
+        }
+
+        /** The value. */
+        final V value;
+
+        /** Its weight. */
+        final long weight;
+    }
+
+    /** A value heavier than 1/MAX_SHARE of the capacity is not cached. */
+    private static final int MAX_SHARE = 8;
+
+    /** The entries, least recently used first. */
+    private final LinkedHashMap<String, Entry<V>> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The most total weight held. */
+    private final long capacity;
+
+    /** The total weight held. */
+    private long total;
+
+    /** Number of lookups that found their value. */
+    private long hits;
+
+    /** Number of lookups that did not. */
+    private long misses;
+
+    /** Number of values evicted. */
+    private long evictions;
+}
@@ -0,0 +1,318 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Encoding of stored objects.  An encoded object starts with a header of
+ *  the four magic bytes 00 'G' 'L' 'O', one format byte (STORED or
+ *  DEFLATED) and the eight-byte size of the contents, followed by the
+ *  contents, deflated if so marked.  Anything without the magic bytes is
+ *  a blob written before objects carried headers, and is its own contents.
+ *  @author Austin Ralleta
+ */
+class ObjectCodec {
+    /**
+     * Encodes the contents of an object, deflating them when that saves
+     * space.
+     * @param contents is the contents of the object.
+     * @return the encoded object.
+     */
+    static byte[] encode(byte[] contents) {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (DeflaterOutputStream out =
+                     new DeflaterOutputStream(deflated, deflater)) {
+            out.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+        boolean compress = deflated.size() < contents.length;
+        ByteArrayOutputStream result = new ByteArrayOutputStream(
+                HEADER_LENGTH + Math.min(deflated.size(), contents.length));
+        try {
+            writeHeader(result, compress ? DEFLATED : STORED,
+                    contents.length);
+            if (compress) {
+                deflated.writeTo(result);
+            } else {
+                result.write(contents);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Writes an object header.
+     * @param out is the stream to write to.
+     * @param format is STORED or DEFLATED.
+     * @param size is the size of the contents.
+     * @throws IOException
+     */
+    static void writeHeader(OutputStream out, int format, long size)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeByte(format);
+        data.writeLong(size);
+        data.flush();
+    }
+
+    /**
+     * Opens a stream of the contents of an encoded object.
+     * @param encoded is a stream positioned at the start of the object.
+     * @param length is the length of the encoded object.
+     * @return a stream of the decoded contents.
+     * @throws IOException
+     */
+    static InputStream decode(InputStream encoded, long length)
+            throws IOException {
+        BufferedInputStream in = new BufferedInputStream(
+                new LimitedInputStream(encoded, length), BUFFER_SIZE);
+        in.mark(HEADER_LENGTH);
+        byte[] header = new byte[HEADER_LENGTH];
+        int got = in.readNBytes(header, 0, HEADER_LENGTH);
+        if (got < HEADER_LENGTH || !hasMagic(header)) {
+            in.reset();
+            return in;
+        }
+        DataInputStream data = new DataInputStream(
+                new ByteArrayInputStream(header, MAGIC.length,
+                        HEADER_LENGTH - MAGIC.length));
+        int format = data.readByte();
+        long size = data.readLong();
+        switch (format) {
+        case STORED:
+            return new LimitedInputStream(in, size);
+        case DEFLATED:
+            Inflater inflater = new Inflater();
+            InputStream inflated = new InflaterInputStream(in, inflater,
+                    BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inflater.end();
+                }
+            };
+            return new LimitedInputStream(inflated, size);
+        default:
+            throw Utils.error("Unknown object format %d.", format);
+        }
+    }
+
+    /**
+     * Decodes an encoded object held in memory.
+     * @param encoded is the encoded object.
+     * @return the contents of the object.
+     */
+    static byte[] decode(byte[] encoded) {
+        if (encoded.length < HEADER_LENGTH || !hasMagic(encoded)) {
+            return encoded;
+        }
+        try (InputStream in = decode(
+                new ByteArrayInputStream(encoded), encoded.length)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Decodes an encoded object straight into a file, creating or
+     * overwriting it, without holding the contents in memory.  Stored
+     * contents are copied with FileChannel.transferTo, so they never pass
+     * through the Java heap.
+     * @param src is the file holding the encoded object.
+     * @param offset is the position of the object in SRC.
+     * @param length is the length of the encoded object.
+     * @param dest is the file to write.
+     * @throws IOException
+     */
+    static void copyTo(FileChannel src, long offset, long length, File dest)
+            throws IOException {
+        long start = Trace.start();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (header.hasRemaining() && header.position() < length
+                && src.read(header, offset + header.position()) > 0) {
+            continue;
+        }
+        if (header.hasRemaining() || !hasMagic(header.array())) {
+            transfer(src, offset, length, dest);
+        } else if (header.get(MAGIC.length) == STORED) {
+            transfer(src, offset + HEADER_LENGTH,
+                    header.getLong(MAGIC.length + 1), dest);
+        } else {
+            src.position(offset);
+            try (InputStream in = decode(Channels.newInputStream(src),
+                    length)) {
+                Files.copy(in, dest.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (start != 0) {
+            Trace.count(Trace.READ, length, start);
+            Trace.count(Trace.WRITE, dest.length(), start);
+        }
+    }
+
+    /**
+     * Copies part of a file into another file, creating or overwriting it.
+     * @param src is the file to copy from.
+     * @param position is the position of the first byte to copy.
+     * @param count is the number of bytes to copy.
+     * @param dest is the file to write.
+     * @throws IOException
+     */
+    private static void transfer(FileChannel src, long position, long count,
+                                 File dest) throws IOException {
+        try (FileChannel out = FileChannel.open(dest.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (count > 0) {
+                long n = src.transferTo(position, count, out);
+                if (n <= 0) {
+                    throw new IOException("object truncated");
+                }
+                position += n;
+                count -= n;
+            }
+        }
+    }
+
+    /**
+     * Chooses how to store a stream of contents from its first block, so
+     * that large files can be encoded in a single pass.
+     * @param sample is the start of the contents.
+     * @param length is the number of bytes of SAMPLE in use.
+     * @return DEFLATED if the sample compresses well, else STORED.
+     */
+    static int formatFor(byte[] sample, int length) {
+        if (length == 0) {
+            return STORED;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            byte[] scratch = new byte[length];
+            int deflated = 0;
+            while (!deflater.finished() && deflated < length) {
+                deflated += deflater.deflate(scratch);
+            }
+            return deflated < length * COMPRESSIBLE ? DEFLATED : STORED;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Determine if a buffer starts with the object magic bytes.
+     * @param header is the buffer.
+     * @return true if the magic bytes are present.
+     */
+    private static boolean hasMagic(byte[] header) {
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Stream that ends after a fixed number of bytes of another stream. */
+    private static class LimitedInputStream extends FilterInputStream {
+        /**
+         * Limits a stream.
+         * @param in is the underlying stream.
+         * @param limit is the number of bytes to pass through.
+         */
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            left = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (left <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                left -= 1;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (left <= 0) {
+                return -1;
+            }
+            int n = in.read(buf, off, (int) Math.min(len, left));
+            if (n > 0) {
+                left -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, left));
+            left -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), left);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /** Bytes still to be passed through. */
+        private long left;
+    }
+
+    /** Format byte of contents stored as is. */
+    static final int STORED = 0;
+
+    /** Format byte of deflated contents. */
+    static final int DEFLATED = 1;
+
+    /** Magic bytes starting every encoded object. */
+    private static final byte[] MAGIC = {0, 'G', 'L', 'O'};
+
+    /** Length of an object header. */
+    static final int HEADER_LENGTH = MAGIC.length + 1 + 8;
+
+    /** Size of stream buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Largest ratio of deflated to raw size of a sample for which a
+     *  streamed object is deflated. */
+    private static final double COMPRESSIBLE = 0.9;
+}
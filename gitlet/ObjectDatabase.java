@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The object store of a repository: the packs under .gitlet/packs, which
+ *  are searched first, and the loose objects under .gitlet/blobs.  New
+ *  objects are always written loose until the next repack.
+ *  @author Austin Ralleta
+ */
+class ObjectDatabase implements ObjectStore {
+    /**
+     * Opens the object store of a repository.
+     * @param gitletDir is the .gitlet directory.
+     */
+    ObjectDatabase(File gitletDir) {
+        this.gitletDir = gitletDir;
+        packDir = Utils.join(gitletDir, "packs");
+        loose = new LooseObjects(Utils.join(gitletDir, "blobs"));
+    }
+
+    @Override
+    public boolean contains(String id) {
+        for (PackFile pack : packs()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return loose.contains(id);
+    }
+
+    @Override
+    public byte[] read(String id) {
+        Events.BlobRead event = Events.blobRead();
+        byte[] contents = ObjectCache.OBJECTS.get(id);
+        if (contents != null) {
+            if (event != null) {
+                event.id = id;
+                event.size = contents.length;
+                event.cacheHit = true;
+                event.commit();
+            }
+            return contents;
+        }
+        boolean packed = false;
+        for (PackFile pack : packs()) {
+            contents = pack.read(id);
+            if (contents != null) {
+                packed = true;
+                break;
+            }
+        }
+        if (contents == null) {
+            contents = loose.read(id);
+        }
+        if (contents == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        ObjectCache.OBJECTS.put(id, contents, contents.length);
+        if (event != null) {
+            event.id = id;
+            event.size = contents.length;
+            event.packed = packed;
+            event.commit();
+        }
+        return contents;
+    }
+
+    @Override
+    public boolean copyTo(String id, File dest) {
+        Events.CheckoutFile event = Events.checkoutFile();
+        boolean found = false;
+        for (PackFile pack : packs()) {
+            if (pack.copyTo(id, dest)) {
+                found = true;
+                break;
+            }
+        }
+        if (!found && !loose.copyTo(id, dest)) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        if (event != null) {
+            event.id = id;
+            event.path = dest.getPath();
+            event.size = dest.length();
+            event.commit();
+        }
+        return true;
+    }
+
+    @Override
+    public void write(String id, byte[] contents) {
+        Events.BlobWrite event = Events.blobWrite();
+        boolean existed = contains(id);
+        if (!existed) {
+            loose.write(id, contents);
+        }
+        if (event != null) {
+            event.id = id;
+            event.existed = existed;
+            event.size = contents.length;
+            event.commit();
+        }
+    }
+
+    /**
+     * Stores the contents of a file, streaming it rather than reading it
+     * into memory.
+     * @param source is the file to store.
+     * @return the SHA-1 of the contents.
+     */
+    String insert(File source) {
+        Events.BlobWrite event = Events.blobWrite();
+        LooseObjects.Inserted inserted = loose.insert(source, this);
+        if (event != null) {
+            event.id = inserted.id;
+            event.existed = inserted.existed;
+            event.size = source.length();
+            event.commit();
+        }
+        return inserted.id;
+    }
+
+    /**
+     * Gets the file a loose object is kept in, whether or not it exists.
+     * @param id is the SHA-1 of the object.
+     * @return the path of the object file.
+     */
+    File looseFile(String id) {
+        return loose.file(id);
+    }
+
+    /**
+     * Moves all loose objects into one new pack.  With "durability=safe"
+     * the pack is synced to disk before any loose object is deleted.
+     * @return the number of objects packed.
+     */
+    int repack() {
+        List<String> ids = loose.ids();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        boolean safe = Config.read(gitletDir).safe();
+        if (packDir.mkdir() && safe) {
+            Transaction.force(gitletDir.toPath());
+        }
+        packs().add(PackFile.write(packDir, ids, loose, safe));
+        for (String id : ids) {
+            loose.delete(id);
+        }
+        return ids.size();
+    }
+
+    /**
+     * Opens the packs of the repository on first use, once even when
+     * several threads read the store.
+     * @return the packs, newest first.
+     */
+    private synchronized List<PackFile> packs() {
+        if (packList == null) {
+            packList = new ArrayList<>();
+            List<String> names = Utils.plainFilenamesIn(packDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(PackFile.IDX_SUFFIX)) {
+                        packList.add(0, new PackFile(Utils.join(packDir,
+                                name)));
+                    }
+                }
+            }
+        }
+        return packList;
+    }
+
+    /** The .gitlet directory. */
+    private File gitletDir;
+
+    /** Directory holding packs. */
+    private File packDir;
+
+    /** Store of loose objects. */
+    private LooseObjects loose;
+
+    /** Open packs, or null until first use. */
+    private List<PackFile> packList;
+}
@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** The SHA-1 of a commit, tree or blob held as its 20 raw bytes, half the
+ *  size of the hexadecimal string and compared without decoding.  The
+ *  static method matches compares an id packed into a larger array in
+ *  place, so a Manifest never has to make an ObjectId per entry.
+ *  @author Austin Ralleta
+ */
+final class ObjectId {
+    /**
+     * Makes an id from raw bytes.
+     * @param raw is an array holding the id.
+     * @param offset is the position of the id in RAW.
+     */
+    ObjectId(byte[] raw, int offset) {
+        bytes = Arrays.copyOfRange(raw, offset, offset + Utils.UID_BYTES);
+    }
+
+    /**
+     * Parses a hexadecimal id.
+     * @param hex is the 40 hexadecimal digits of the id.
+     * @return the id.
+     */
+    static ObjectId fromString(String hex) {
+        return new ObjectId(Utils.uidToBytes(hex), 0);
+    }
+
+    /**
+     * Copies the raw bytes of this id into an array.
+     * @param dest is the array.
+     * @param offset is the position in DEST to copy to.
+     */
+    void copyTo(byte[] dest, int offset) {
+        System.arraycopy(bytes, 0, dest, offset, Utils.UID_BYTES);
+    }
+
+    /**
+     * Determine if an id packed into an array equals a hexadecimal id,
+     * without decoding either.
+     * @param raw is an array holding the id.
+     * @param offset is the position of the id in RAW.
+     * @param hex is the hexadecimal id, or null.
+     * @return true if they are equal.
+     */
+    static boolean matches(byte[] raw, int offset, String hex) {
+        if (hex == null || hex.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < Utils.UID_BYTES; i += 1) {
+            int b = raw[offset + i] & 0xff;
+            if (Character.digit(hex.charAt(2 * i), 16) != b >>> 4
+                    || Character.digit(hex.charAt(2 * i + 1), 16)
+                    != (b & 0xf)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ObjectId
+            && Arrays.equals(bytes, ((ObjectId) obj).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16
+            | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
+    /**
+     * Gets the id in hexadecimal.
+     * @return the 40 hexadecimal digits of the id.
+     */
+    @Override
+    public String toString() {
+        return Utils.bytesToUid(bytes, 0);
+    }
+
+    /** The raw bytes of the id. */
+    private final byte[] bytes;
+}
@@ -0,0 +1,32 @@
+package gitlet;
+
+import java.io.File;
+
+/** A source of content-addressed objects, each named by the SHA-1 of
+ *  its contents, that can only be read.
+ *  @author Austin Ralleta
+ */
+interface ObjectSource {
+    /**
+     * Determine if an object is in this store.
+     * @param id is the SHA-1 of the object.
+     * @return true if the object is present.
+     */
+    boolean contains(String id);
+
+    /**
+     * Reads an object.
+     * @param id is the SHA-1 of the object.
+     * @return the contents of the object, or null if it is not present.
+     */
+    byte[] read(String id);
+
+    /**
+     * Writes the contents of an object into a file, creating or
+     * overwriting it, without holding the whole object in memory.
+     * @param id is the SHA-1 of the object.
+     * @param dest is the file to write.
+     * @return false if the object is not present.
+     */
+    boolean copyTo(String id, File dest);
+}
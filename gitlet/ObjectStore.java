@@ -0,0 +1,14 @@
+package gitlet;
+
+/** A store of content-addressed objects, each named by the SHA-1 of
+ *  its contents, that objects can be written to as well as read from.
+ *  @author Austin Ralleta
+ */
+interface ObjectStore extends ObjectSource {
+    /**
+     * Stores an object unless one with the same id is already present.
+     * @param id is the SHA-1 of the object.
+     * @param contents is the contents of the object.
+     */
+    void write(String id, byte[] contents);
+}
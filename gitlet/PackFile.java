@@ -0,0 +1,262 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** A pack of objects: an append-only data file (NAME.pack) holding objects
+ *  back to back, each encoded as by ObjectCodec, and an index file
+ *  (NAME.idx) of fixed-width (id, offset, length) records sorted by id.
+ *  The index is memory-mapped and binary-searched, so a lookup touches
+ *  O(log n) pages and opens no file per object.  Packs are never changed
+ *  once written, so new objects are always written loose.
+ *  @author Austin Ralleta
+ */
+class PackFile implements ObjectSource {
+    /**
+     * Opens an existing pack.
+     * @param idx is the index file of the pack.
+     */
+    PackFile(File idx) {
+        idxFile = idx;
+        String name = idx.getName();
+        packFile = new File(idx.getParentFile(),
+                name.substring(0, name.length() - IDX_SUFFIX.length())
+                + PACK_SUFFIX);
+    }
+
+    /**
+     * Writes a new pack holding the given objects into a directory.  If
+     * SAFE, the pack and its index are synced to disk before the index is
+     * renamed into place, and the directory after, so the pack survives a
+     * crash once this returns.
+     * @param dir is the directory holding packs.
+     * @param ids is the SHA-1 of each object to pack.
+     * @param source is the store to copy the encoded objects from.
+     * @param safe is true if the pack must be synced to disk.
+     * @return the new pack.
+     */
+    static PackFile write(File dir, List<String> ids,
+                          LooseObjects source, boolean safe) {
+        List<String> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        String name = "pack-" + Utils.sha1(String.join("", sorted));
+        File pack = Utils.join(dir, name + PACK_SUFFIX);
+        File idx = Utils.join(dir, name + IDX_SUFFIX);
+        File tmpIdx = Utils.join(dir, name + IDX_SUFFIX + ".tmp");
+        long[] offsets = new long[sorted.size()];
+        long[] lengths = new long[sorted.size()];
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(pack.toPath())))) {
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                long offset = PACK_HEADER;
+                for (int i = 0; i < sorted.size(); i += 1) {
+                    File objectFile = source.file(sorted.get(i));
+                    long length = Files.copy(objectFile.toPath(), out);
+                    offsets[i] = offset;
+                    lengths[i] = length;
+                    offset += length;
+                }
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmpIdx.toPath())))) {
+                out.writeInt(IDX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sorted.size());
+                for (int i = 0; i < sorted.size(); i += 1) {
+                    out.write(Utils.uidToBytes(sorted.get(i)));
+                    out.writeLong(offsets[i]);
+                    out.writeLong(lengths[i]);
+                }
+            }
+            if (safe) {
+                Transaction.force(pack.toPath());
+                Transaction.force(tmpIdx.toPath());
+            }
+            Files.move(tmpIdx.toPath(), idx.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (safe) {
+                Transaction.force(dir.toPath());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return new PackFile(idx);
+    }
+
+    /**
+     * Gets the number of objects in this pack.
+     * @return the object count.
+     */
+    int size() {
+        return index().getInt(8);
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return find(Utils.uidToBytes(id)) >= 0;
+    }
+
+    @Override
+    public byte[] read(String id) {
+        int pos = find(Utils.uidToBytes(id));
+        if (pos < 0) {
+            return null;
+        }
+        long length = length(pos);
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("object too large to read");
+        }
+        byte[] result = new byte[(int) length];
+        long start = Trace.start();
+        try (RandomAccessFile data = new RandomAccessFile(packFile, "r")) {
+            data.seek(offset(pos));
+            data.readFully(result);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count(Trace.READ, length, start);
+        return ObjectCodec.decode(result);
+    }
+
+    @Override
+    public boolean copyTo(String id, File dest) {
+        int pos = find(Utils.uidToBytes(id));
+        if (pos < 0) {
+            return false;
+        }
+        try (FileChannel data = FileChannel.open(packFile.toPath())) {
+            ObjectCodec.copyTo(data, offset(pos), length(pos), dest);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Gets the position of an object in the data file.
+     * @param pos is the record number of the object.
+     * @return the offset of the encoded object.
+     */
+    private long offset(int pos) {
+        return index().getLong(IDX_HEADER + pos * RECORD + Utils.UID_BYTES);
+    }
+
+    /**
+     * Gets the stored length of an object.
+     * @param pos is the record number of the object.
+     * @return the length of the encoded object.
+     */
+    private long length(int pos) {
+        return index().getLong(IDX_HEADER + pos * RECORD + Utils.UID_BYTES
+                + 8);
+    }
+
+    /**
+     * Binary searches the index for an id.
+     * @param id is the raw SHA-1 of the object.
+     * @return the record number of the object, or -1 if it is absent.
+     */
+    private int find(byte[] id) {
+        ByteBuffer idx = index();
+        int lo = 0;
+        int hi = idx.getInt(8) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(idx, IDX_HEADER + mid * RECORD, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the id stored at a position of the index with an id.
+     * @param idx is the mapped index.
+     * @param pos is the position of the stored id.
+     * @param id is the raw SHA-1 to compare with.
+     * @return negative, zero or positive as the stored id is less than,
+     *         equal to or greater than ID.
+     */
+    private static int compare(ByteBuffer idx, int pos, byte[] id) {
+        for (int i = 0; i < id.length; i += 1) {
+            int diff = (idx.get(pos + i) & 0xff) - (id[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Maps the index file on first use, once even when several threads
+     * read the pack.
+     * @return the mapped index.
+     */
+    private synchronized ByteBuffer index() {
+        if (mapped == null) {
+            try (FileChannel channel = FileChannel.open(idxFile.toPath())) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (mapped.getInt(0) != IDX_MAGIC) {
+                throw Utils.error("Corrupt pack index %s.", idxFile);
+            }
+        }
+        return mapped;
+    }
+
+    /** Suffix of pack index files. */
+    static final String IDX_SUFFIX = ".idx";
+
+    /** Suffix of pack data files. */
+    static final String PACK_SUFFIX = ".pack";
+
+    /** First word of a pack data file ("GPAK"). */
+    private static final int PACK_MAGIC = 0x4750414b;
+
+    /** First word of a pack index file ("GIDX"). */
+    private static final int IDX_MAGIC = 0x47494458;
+
+    /** Format version of packs and their indices. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first object of a pack data file. */
+    private static final int PACK_HEADER = 8;
+
+    /** Bytes before the first record of an index file. */
+    private static final int IDX_HEADER = 12;
+
+    /** Bytes in one index record: id, offset and length. */
+    private static final int RECORD = Utils.UID_BYTES + 16;
+
+    /** Index file of this pack. */
+    private File idxFile;
+
+    /** Data file of this pack. */
+    private File packFile;
+
+    /** The memory-mapped index, or null until first use. */
+    private MappedByteBuffer mapped;
+}
@@ -0,0 +1,213 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** The command server: an optional background process that runs Gitlet
+ *  commands for one repository in a single JVM, so that the index, the
+ *  object store and the commit graph stay open and the compiled code stays
+ *  warm from one command to the next.  It listens on the Unix domain
+ *  socket .gitlet/server.
+ *
+ *  While a server is running, Main forwards every command except init,
+ *  monitor and serve to it through a Client.  Commands run one at a time,
+ *  in the order the server accepts them.
+ *  @author Austin Ralleta
+ */
+class Server {
+
+    /**
+     * Starts a server for a working directory in a new background
+     * process, unless one is running already.
+     * @param workDir is the working directory.
+     */
+    static void start(File workDir) {
+        if (Client.isRunning(workDir)) {
+            System.out.println("The server is already running.");
+            return;
+        }
+        String java = ProcessHandle.current().info().command()
+                .orElse("java");
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"), "gitlet.Main",
+                "serve", "run");
+        builder.directory(workDir);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        try {
+            builder.start();
+            long deadline = System.nanoTime() + START_WAIT;
+            while (!Client.isRunning(workDir)
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(POLL_MILLIS);
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!Client.isRunning(workDir)) {
+            System.out.println("The server did not start.");
+        }
+    }
+
+    /**
+     * Asks a running server to stop.
+     * @param workDir is the working directory.
+     */
+    static void stop(File workDir) {
+        if (Client.forward(workDir, "serve", "stop") < 0) {
+            System.out.println("The server is not running.");
+        }
+    }
+
+    /**
+     * Runs a server in this process until it is stopped.
+     * @param workDir is the working directory.
+     */
+    static void run(File workDir) {
+        if (Client.isRunning(workDir)) {
+            System.out.println("The server is already running.");
+            return;
+        }
+        File socket = Client.socket(workDir);
+        socket.delete();
+        try (ServerSocketChannel server = ServerSocketChannel.open(
+                StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            Runtime.getRuntime().addShutdownHook(new Thread(socket::delete));
+            PrintStream out = System.out;
+            PrintStream err = System.err;
+            boolean stopped = false;
+            while (!stopped) {
+                try (SocketChannel client = server.accept()) {
+                    stopped = serve(client);
+                } catch (IOException excp) {
+                    continue;
+                } finally {
+                    System.setOut(out);
+                    System.setErr(err);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /**
+     * Runs one command for a client.
+     * @param client is the connection to the client.
+     * @return true if the client asked the server to stop.
+     * @throws IOException
+     */
+    private static boolean serve(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+                Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        DataOutputStream frames = new DataOutputStream(
+                Channels.newOutputStream(client));
+        if (args.length == 2 && args[0].equals("serve")
+                && args[1].equals("stop")) {
+            frames.writeByte(Client.EXIT);
+            frames.writeInt(0);
+            frames.flush();
+            return true;
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                new FrameOutputStream(frames, Client.OUT), BUFFER_SIZE),
+                false, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new FrameOutputStream(frames,
+                Client.ERR), true, StandardCharsets.UTF_8);
+        System.setOut(out);
+        System.setErr(err);
+        Commands.forgetState(completed);
+        completed = false;
+        int status = 0;
+        try {
+            Main.run(args);
+            completed = true;
+        } catch (Main.Exit excp) {
+            status = excp.status;
+        } catch (RuntimeException | IOException | Error excp) {
+            out.flush();
+            excp.printStackTrace(err);
+            status = 1;
+        }
+        out.flush();
+        err.flush();
+        frames.writeByte(Client.EXIT);
+        frames.writeInt(status);
+        frames.flush();
+        return false;
+    }
+
+    /** Writes everything written to it as frames of one kind. */
+    private static class FrameOutputStream extends OutputStream {
+        /**
+         * Makes a stream of frames.
+         * @param frames is the stream to the client.
+         * @param frameKind is Client.OUT or Client.ERR.
+         */
+        FrameOutputStream(DataOutputStream frames, int frameKind) {
+            out = frames;
+            kind = frameKind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (out) {
+                out.writeByte(kind);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+
+        /** The stream to the client. */
+        private final DataOutputStream out;
+
+        /** The kind of the frames. */
+        private final int kind;
+    }
+
+    /** Indicates whether the last command ran to its end, leaving the
+     *  state Commands keeps open consistent with the repository. */
+    private static boolean completed = true;
+
+    /** Size of the output buffer of a command. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** Most nanoseconds start waits for a new server. */
+    private static final long START_WAIT = 5_000_000_000L;
+
+    /** Milliseconds between checks for a starting server. */
+    private static final long POLL_MILLIS = 10;
+}
@@ -0,0 +1,280 @@
+package gitlet;
+
+import com.sun.management.OperatingSystemMXBean;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counts of the reads, writes, hashing and serialization a command does,
+ *  with the bytes and nanoseconds spent on each.  Reads and writes are
+ *  counted in Utils, the object store and the index, and hashing in every
+ *  SHA-1 digest got from Utils.sha1Digest, in whichever thread does them,
+ *  so the counts cover the files that add, status and checkout hash and
+ *  copy in parallel.  Counting is off, at the cost of a test per call,
+ *  unless the command is given as
+ *  java gitlet.Main --trace COMMAND ..., or the environment variable
+ *  GITLET_TRACE is set.  Then, when the command ends, a summary is printed
+ *  on standard error as one line of JSON:
+ *  {"command":"status","status":0,"nanos":N,"cpuNanos":N,
+ *   "read":{"count":N,"bytes":N,"nanos":N},"write":{...},"hash":{...},
+ *   "serialize":{...},"deserialize":{...},
+ *   "objectCache":{"hits":N,"misses":N},"commitCache":{...}}
+ *  The cache counters are those of ObjectCache during the command, and
+ *  cpuNanos is the CPU time of the whole process, worker threads included.
+ *  The nanoseconds of a phase include those of any phase it calls, as when
+ *  writing an object serializes it first, and a copy between the object
+ *  store and a working file counts its whole time as both a read and a
+ *  write.
+ *  @author Austin Ralleta
+ */
+class Trace {
+
+    /** Phase of reading file contents. */
+    static final int READ = 0;
+    /** Phase of writing file contents. */
+    static final int WRITE = 1;
+    /** Phase of computing SHA-1 hashes. */
+    static final int HASH = 2;
+    /** Phase of serializing objects. */
+    static final int SERIALIZE = 3;
+    /** Phase of reading serialized objects. */
+    static final int DESERIALIZE = 4;
+
+    /**
+     * Starts counting for a command, forgetting the counts of any earlier
+     * one.
+     * @param name is the name of the command.
+     */
+    static void begin(String name) {
+        command = name;
+        for (int i = 0; i < NAMES.length; i += 1) {
+            COUNTS[i].reset();
+            BYTES[i].reset();
+            NANOS[i].reset();
+        }
+        if (system == null) {
+            system = ManagementFactory.getPlatformMXBean(
+                    OperatingSystemMXBean.class);
+        }
+        cpuStart = system.getProcessCpuTime();
+        for (int i = 0; i < CACHES.length; i += 1) {
+            CACHE_START[i][0] = CACHES[i].hits();
+            CACHE_START[i][1] = CACHES[i].misses();
+        }
+        start = System.nanoTime();
+        active = true;
+    }
+
+    /**
+     * Gets the start time of an operation.
+     * @return the time, or 0 if counting is off.
+     */
+    static long start() {
+        return active ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts an operation.
+     * @param phase is the phase of the operation.
+     * @param size is the number of bytes it handled.
+     * @param startTime is what start returned before the operation.
+     */
+    static void count(int phase, long size, long startTime) {
+        if (active) {
+            COUNTS[phase].increment();
+            BYTES[phase].add(size);
+            NANOS[phase].add(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Counts the hashing done with a digest, if counting is on.
+     * @param digest is a new digest.
+     * @return a digest that counts each hash it computes, with the bytes
+     *         it hashed, or DIGEST itself if counting is off.
+     */
+    static MessageDigest counted(MessageDigest digest) {
+        return active ? new CountingDigest(digest) : digest;
+    }
+
+    /**
+     * Stops counting and prints the summary of the command, if counting
+     * is on.
+     * @param status is the exit status of the command.
+     */
+    static void end(int status) {
+        if (active) {
+            PrintStream err = System.err;
+            err.println(summary(status));
+            err.flush();
+        }
+    }
+
+    /**
+     * Stops counting.
+     * @param status is the exit status of the command.
+     * @return the summary of the command as one line of JSON.
+     */
+    static String summary(int status) {
+        long total = System.nanoTime() - start;
+        long cpu = system.getProcessCpuTime() - cpuStart;
+        active = false;
+        StringBuilder result = new StringBuilder("{\"command\":\"");
+        for (char c : command.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        result.append("\",\"status\":").append(status)
+            .append(",\"nanos\":").append(total)
+            .append(",\"cpuNanos\":").append(cpu);
+        for (int i = 0; i < NAMES.length; i += 1) {
+            result.append(",\"").append(NAMES[i]).append("\":{\"count\":")
+                .append(COUNTS[i].sum()).append(",\"bytes\":")
+                .append(BYTES[i].sum()).append(",\"nanos\":")
+                .append(NANOS[i].sum()).append('}');
+        }
+        for (int i = 0; i < CACHES.length; i += 1) {
+            result.append(",\"").append(CACHE_NAMES[i])
+                .append("\":{\"hits\":")
+                .append(CACHES[i].hits() - CACHE_START[i][0])
+                .append(",\"misses\":")
+                .append(CACHES[i].misses() - CACHE_START[i][1]).append('}');
+        }
+        return result.append('}').toString();
+    }
+
+    /** A digest that counts the hashing done through it as HASH. */
+    private static class CountingDigest extends MessageDigest {
+        /**
+         * Wraps a digest.
+         * @param digest is the digest that does the hashing.
+         */
+        CountingDigest(MessageDigest digest) {
+            super(digest.getAlgorithm());
+            inner = digest;
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            long startTime = System.nanoTime();
+            inner.update(input);
+            add(1, startTime);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            long startTime = System.nanoTime();
+            inner.update(input, offset, len);
+            add(len, startTime);
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            long startTime = System.nanoTime();
+            int len = input.remaining();
+            inner.update(input);
+            add(len, startTime);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            long startTime = System.nanoTime();
+            byte[] result = inner.digest();
+            count(HASH, 0, startTime);
+            return result;
+        }
+
+        @Override
+        protected void engineReset() {
+            inner.reset();
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return inner.getDigestLength();
+        }
+
+        /**
+         * Counts bytes hashed, leaving the number of hashes to digest.
+         * @param size is the number of bytes.
+         * @param startTime is when hashing them started.
+         */
+        private static void add(long size, long startTime) {
+            if (active) {
+                BYTES[HASH].add(size);
+                NANOS[HASH].add(System.nanoTime() - startTime);
+            }
+        }
+
+        /** The digest that does the hashing. */
+        private final MessageDigest inner;
+    }
+
+    /**
+     * Makes one counter per phase.
+     * @return the counters, each zero.
+     */
+    private static LongAdder[] adders() {
+        LongAdder[] result = new LongAdder[NAMES.length];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+
+    /** Command-line flag that turns counting on. */
+    static final String FLAG = "--trace";
+
+    /** Environment variable that turns counting on when set. */
+    static final String VARIABLE = "GITLET_TRACE";
+
+    /** Names of the phases in the summary, indexed by phase. */
+    private static final String[] NAMES = {
+        "read", "write", "hash", "serialize", "deserialize",
+    };
+
+    /** The caches whose counters are reported. */
+    private static final ObjectCache<?>[] CACHES = {
+        ObjectCache.OBJECTS, ObjectCache.COMMITS,
+    };
+
+    /** Names of the caches in the summary. */
+    private static final String[] CACHE_NAMES = {
+        "objectCache", "commitCache",
+    };
+
+    /** Hits and misses of each cache when the command started. */
+    private static final long[][] CACHE_START = new long[CACHES.length][2];
+
+    /** Source of the CPU time of the process, got when counting is first
+     *  turned on. */
+    private static OperatingSystemMXBean system;
+
+    /** Number of operations of each phase. */
+    private static final LongAdder[] COUNTS = adders();
+
+    /** Number of bytes handled by each phase. */
+    private static final LongAdder[] BYTES = adders();
+
+    /** Nanoseconds spent in each phase. */
+    private static final LongAdder[] NANOS = adders();
+
+    /** Indicates whether counting is on. */
+    private static volatile boolean active;
+
+    /** Name of the command being counted. */
+    private static String command;
+
+    /** Time at which the command started. */
+    private static long start;
+
+    /** CPU time of the process at which the command started. */
+    private static long cpuStart;
+}
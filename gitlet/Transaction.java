@@ -0,0 +1,344 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/** A group of repository writes that takes effect all at once.  New
+ *  objects and other files that are never overwritten are written first,
+ *  through temporary files renamed into place.  Files that are replaced,
+ *  such as HEAD, branches and the index, are then written beside their
+ *  targets as TARGET.tx, and the names of the targets are written to
+ *  .gitlet/transaction, also through a temporary file and a rename.  That
+ *  rename is the moment the transaction commits: the .tx files are then
+ *  renamed over their targets and the journal is deleted.  If the process
+ *  dies before the rename, none of the replacements happen; if it dies
+ *  after, recover finishes them on the next command.  Committing and
+ *  recovering both hold a lock on .gitlet/lock, so a command starting in
+ *  another process never replays or deletes a journal that a commit is
+ *  still writing or applying.
+ *
+ *  With "durability=safe" in the config, every file written is synced to
+ *  disk, all at once just before each of the two renames that publish a
+ *  batch, and so are the directories holding them; with
+ *  "durability=fast" nothing is synced, which keeps the repository
+ *  consistent if the process dies but not if the machine does.
+ *
+ *  A transaction is also an object store: objects written to it are held
+ *  in memory until the transaction writes its objects.
+ *  @author Austin Ralleta
+ */
+class Transaction implements ObjectStore {
+    /**
+     * Starts a transaction.
+     * @param dir is the .gitlet directory.
+     * @param objects is the object store of the repository.
+     */
+    Transaction(File dir, ObjectDatabase objects) {
+        gitletDir = dir;
+        store = objects;
+        safe = Config.read(dir).safe();
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return pending.containsKey(id) || store.contains(id);
+    }
+
+    @Override
+    public byte[] read(String id) {
+        byte[] contents = pending.get(id);
+        return contents != null ? contents : store.read(id);
+    }
+
+    @Override
+    public boolean copyTo(String id, File dest) {
+        byte[] contents = pending.get(id);
+        if (contents == null) {
+            return store.copyTo(id, dest);
+        }
+        Utils.writeContents(dest, (Object) contents);
+        return true;
+    }
+
+    @Override
+    public void write(String id, byte[] contents) {
+        if (!contains(id)) {
+            pending.put(id, contents);
+        }
+    }
+
+    /**
+     * Writes a new file that nothing refers to until this transaction
+     * commits, such as a commit file.
+     * @param file is the file.
+     * @param contents is its contents.
+     */
+    void create(File file, byte[] contents) {
+        created.put(file, contents);
+    }
+
+    /**
+     * Replaces a file when this transaction commits.
+     * @param file is the file.
+     * @param contents is its new contents.
+     */
+    void replace(File file, byte[] contents) {
+        Utils.writeContents(temporary(file), (Object) contents);
+        replace(file);
+    }
+
+    /**
+     * Replaces a file when this transaction commits with the contents the
+     * caller already wrote to temporary(FILE).
+     * @param file is the file.
+     */
+    void replace(File file) {
+        replaced.add(file);
+        sync(temporary(file));
+    }
+
+    /**
+     * Gets the temporary file that holds the new contents of a file until
+     * this transaction commits.
+     * @param file is the file to be replaced.
+     * @return the temporary file.
+     */
+    static File temporary(File file) {
+        return Utils.join(file.getParentFile(), file.getName() + ".tx");
+    }
+
+    /**
+     * Syncs a file the caller wrote itself, with the next batch.
+     * @param file is the file.
+     */
+    void sync(File file) {
+        unsynced.add(file);
+    }
+
+    /**
+     * Writes the pending objects and new files, so that they are in place
+     * before anything that refers to them.
+     */
+    void writeObjects() {
+        if (pending.isEmpty() && created.isEmpty()) {
+            return;
+        }
+        List<File[]> moves = new ArrayList<>();
+        for (Map.Entry<String, byte[]> object : pending.entrySet()) {
+            Events.BlobWrite event = Events.blobWrite();
+            File file = store.looseFile(object.getKey());
+            moves.add(new File[] {writeTemporary(file,
+                    ObjectCodec.encode(object.getValue())), file});
+            if (event != null) {
+                event.id = object.getKey();
+                event.size = object.getValue().length;
+                event.commit();
+            }
+        }
+        for (Map.Entry<File, byte[]> file : created.entrySet()) {
+            moves.add(new File[] {writeTemporary(file.getKey(),
+                    file.getValue()), file.getKey()});
+        }
+        flush();
+        for (File[] move : moves) {
+            move(move[0], move[1]);
+            unsynced.add(move[1].getParentFile());
+        }
+        flush();
+        pending.clear();
+        created.clear();
+    }
+
+    /**
+     * Commits this transaction.
+     */
+    void commit() {
+        try (FileChannel channel = lockChannel(gitletDir);
+             FileLock lock = channel.lock()) {
+            writeObjects();
+            if (replaced.isEmpty()) {
+                return;
+            }
+            StringBuilder names = new StringBuilder();
+            for (File file : replaced) {
+                names.append(relative(file)).append('\n');
+            }
+            File journal = Utils.join(gitletDir, JOURNAL);
+            File journalTmp = writeTemporary(journal,
+                    names.toString().getBytes(StandardCharsets.UTF_8));
+            flush();
+            move(journalTmp, journal);
+            unsynced.add(gitletDir);
+            flush();
+            apply(gitletDir);
+            replaced.clear();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Finishes a transaction that committed before the process died, and
+     * drops one that did not.
+     * @param gitletDir is the .gitlet directory.
+     */
+    static void recover(File gitletDir) {
+        try (FileChannel channel = lockChannel(gitletDir);
+             FileLock lock = channel.lock()) {
+            File journal = Utils.join(gitletDir, JOURNAL);
+            if (journal.exists()) {
+                apply(gitletDir);
+            }
+            Utils.join(gitletDir, JOURNAL + ".tmp").delete();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Opens the lock file of a repository, which committing and recovering
+     * lock while they run.
+     * @param gitletDir is the .gitlet directory.
+     * @return the open lock file.
+     * @throws IOException
+     */
+    private static FileChannel lockChannel(File gitletDir)
+            throws IOException {
+        return FileChannel.open(Utils.join(gitletDir, LOCK).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Renames the temporary files named in the journal over their targets
+     * and deletes the journal.  Renames already done are skipped, so this
+     * can be repeated.
+     * @param gitletDir is the .gitlet directory.
+     */
+    private static void apply(File gitletDir) {
+        File journal = Utils.join(gitletDir, JOURNAL);
+        for (String name
+                 : Utils.readContentsAsString(journal).split("\n")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            File target = Utils.join(gitletDir, name);
+            File tmp = temporary(target);
+            if (tmp.exists()) {
+                move(tmp, target);
+            }
+        }
+        journal.delete();
+    }
+
+    /**
+     * Writes a temporary file beside a file.
+     * @param file is the file the contents are for.
+     * @param contents is the contents.
+     * @return the temporary file.
+     */
+    private File writeTemporary(File file, byte[] contents) {
+        File tmp = Utils.join(file.getParentFile(), file.getName() + ".tmp");
+        Utils.writeContents(tmp, (Object) contents);
+        unsynced.add(tmp);
+        return tmp;
+    }
+
+    /**
+     * Renames a file atomically, replacing its target.
+     * @param from is the file to rename.
+     * @param to is the new name.
+     */
+    private static void move(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Syncs every file and directory written since the last flush, if
+     * this transaction is safe.
+     */
+    private void flush() {
+        if (safe) {
+            for (File file : unsynced) {
+                force(file.toPath());
+            }
+        }
+        unsynced.clear();
+    }
+
+    /**
+     * Syncs a file or directory to disk.  Systems that cannot open a
+     * directory for syncing are skipped.
+     * @param path is the file or directory.
+     */
+    static void force(Path path) {
+        try (FileChannel channel = FileChannel.open(path,
+                Files.isDirectory(path) ? StandardOpenOption.READ
+                : StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (NoSuchFileException excp) {
+            return;
+        } catch (IOException excp) {
+            if (!Files.isDirectory(path)) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gets the name of a file relative to the .gitlet directory.
+     * @param file is a file under .gitlet.
+     * @return its name, with '/' between directories.
+     */
+    private String relative(File file) {
+        return gitletDir.toPath().relativize(file.toPath()).toString()
+            .replace(File.separatorChar, '/');
+    }
+
+    /** Name of the journal of a committing transaction. */
+    private static final String JOURNAL = "transaction";
+
+    /** Name of the file locked while committing or recovering. */
+    private static final String LOCK = "lock";
+
+    /** The .gitlet directory. */
+    private final File gitletDir;
+
+    /** The object store of the repository. */
+    private final ObjectDatabase store;
+
+    /** Indicates whether writes are synced to disk. */
+    private final boolean safe;
+
+    /** Contents of objects not yet written, by SHA-1. */
+    private final LinkedHashMap<String, byte[]> pending =
+        new LinkedHashMap<>();
+
+    /** Contents of new files not yet written. */
+    private final LinkedHashMap<File, byte[]> created =
+        new LinkedHashMap<>();
+
+    /** Files whose replacements wait in their temporary files. */
+    private final LinkedHashSet<File> replaced = new LinkedHashSet<>();
+
+    /** Files and directories written but not yet synced. */
+    private final LinkedHashSet<File> unsynced = new LinkedHashSet<>();
+}
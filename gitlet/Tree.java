@@ -0,0 +1,380 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A tree object: the contents of one directory of a commit, naming the
+ *  blob of each file and the tree of each subdirectory.  Trees are stored
+ *  in the object store under the SHA-1 of their encoding, so a directory
+ *  that did not change between two commits is the same object in both,
+ *  and comparing two tree ids compares whole directories.  File names
+ *  inside a commit are paths relative to the working directory, with '/'
+ *  between directories.
+ *  @author Austin Ralleta
+ */
+class Tree {
+    /**
+     * Encodes this tree: a magic word, the number of entries, and the
+     * entries sorted by name, each a kind byte (FILE or DIR), a
+     * length-prefixed UTF-8 name and the 20 raw bytes of its id.
+     * @return the encoded tree.
+     */
+    byte[] encode() {
+        TreeMap<String, Boolean> names = new TreeMap<>();
+        for (String name : files.keySet()) {
+            names.put(name, false);
+        }
+        for (String name : dirs.keySet()) {
+            names.put(name, true);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] raw = new byte[Utils.UID_BYTES];
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(names.size());
+            for (Map.Entry<String, Boolean> name : names.entrySet()) {
+                boolean isDir = name.getValue();
+                out.writeByte(isDir ? DIR : FILE);
+                byte[] text = name.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+                ObjectId id = isDir ? dirs.get(name.getKey())
+                    : files.get(name.getKey());
+                id.copyTo(raw, 0);
+                out.write(raw);
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a tree.
+     * @param data is an encoded tree.
+     * @return the tree.
+     */
+    static Tree decode(byte[] data) {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(data));
+        Tree result = new Tree();
+        try {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("Not a tree object.");
+            }
+            int count = in.readInt();
+            byte[] raw = new byte[Utils.UID_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                int kind = in.readByte();
+                byte[] name = new byte[in.readInt()];
+                in.readFully(name);
+                in.readFully(raw);
+                (kind == DIR ? result.dirs : result.files).put(
+                        new String(name, StandardCharsets.UTF_8),
+                        new ObjectId(raw, 0));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree.");
+        }
+        return result;
+    }
+
+    /**
+     * Reads a tree from an object store.
+     * @param store is the object store.
+     * @param id is the SHA-1 of the tree, or null for an empty tree.
+     * @return the tree.
+     */
+    static Tree read(ObjectStore store, String id) {
+        if (id == null) {
+            return new Tree();
+        }
+        return decode(store.read(id));
+    }
+
+    /**
+     * Reads a tree from an object store.
+     * @param store is the object store.
+     * @param id is the id of the tree, or null for an empty tree.
+     * @return the tree.
+     */
+    private static Tree read(ObjectStore store, ObjectId id) {
+        return read(store, id == null ? null : id.toString());
+    }
+
+    /**
+     * Stores this tree unless it is already present.
+     * @param store is the object store.
+     * @return the SHA-1 of the tree.
+     */
+    String write(ObjectStore store) {
+        byte[] data = encode();
+        String id = Utils.sha1(data);
+        store.write(id, data);
+        return id;
+    }
+
+    /**
+     * Determine if this tree has no entries.
+     * @return true if it is empty.
+     */
+    boolean isEmpty() {
+        return files.isEmpty() && dirs.isEmpty();
+    }
+
+    /**
+     * Stores the trees of a whole set of files.
+     * @param store is the object store.
+     * @param manifest is the files.
+     * @return the SHA-1 of the root tree.
+     */
+    static String write(ObjectStore store, Manifest manifest) {
+        return write(store, manifest, 0, manifest.size(), 0);
+    }
+
+    /**
+     * Stores the tree of one directory of a manifest and the trees below
+     * it.  The paths of a manifest are sorted, so the files under any
+     * directory are next to each other.
+     * @param store is the object store.
+     * @param manifest is the files.
+     * @param from is the position of the first file in the directory.
+     * @param to is the position after its last file.
+     * @param prefix is the length of the directory's path followed by '/',
+     *               or 0 for the root.
+     * @return the SHA-1 of the tree.
+     */
+    private static String write(ObjectStore store, Manifest manifest,
+                                int from, int to, int prefix) {
+        Tree tree = new Tree();
+        int i = from;
+        while (i < to) {
+            String path = manifest.path(i);
+            int slash = path.indexOf('/', prefix);
+            if (slash < 0) {
+                tree.files.put(path.substring(prefix), manifest.id(i));
+                i += 1;
+                continue;
+            }
+            String dir = path.substring(0, slash + 1);
+            int end = i + 1;
+            while (end < to && manifest.path(end).startsWith(dir)) {
+                end += 1;
+            }
+            tree.dirs.put(path.substring(prefix, slash), ObjectId.fromString(
+                    write(store, manifest, i, end, slash + 1)));
+            i = end;
+        }
+        return tree.write(store);
+    }
+
+    /**
+     * Applies changes to a stored tree.  Only the trees on the paths of
+     * changed files are read and rewritten; every other subtree is shared
+     * with the old tree.  Directories left empty disappear, but the root
+     * tree is always stored.
+     * @param store is the object store.
+     * @param root is the SHA-1 of the old root tree, or null for none.
+     * @param changes is a map of file paths to their new blob ids, or to
+     *                null for files to delete.
+     * @return the SHA-1 of the new root tree.
+     */
+    static String update(ObjectStore store, String root,
+                         Map<String, String> changes) {
+        if (root != null && changes.isEmpty()) {
+            return root;
+        }
+        Tree tree = updated(store, root == null ? null
+            : ObjectId.fromString(root), changes);
+        return tree.write(store);
+    }
+
+    /**
+     * Applies changes to a tree and stores its changed subdirectories.
+     * @param store is the object store.
+     * @param id is the id of the old tree, or null for none.
+     * @param changes is a map of paths relative to this tree to their new
+     *                blob ids, or to null for files to delete.
+     * @return the changed tree, not yet stored.
+     */
+    private static Tree updated(ObjectStore store, ObjectId id,
+                                Map<String, String> changes) {
+        Tree tree = read(store, id);
+        TreeMap<String, Map<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                    k -> new HashMap<>()).put(path.substring(slash + 1),
+                        change.getValue());
+            } else if (change.getValue() == null) {
+                tree.files.remove(path);
+            } else {
+                tree.files.put(path, ObjectId.fromString(change.getValue()));
+                tree.dirs.remove(path);
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> dir : below.entrySet()) {
+            String name = dir.getKey();
+            Tree sub = updated(store, tree.dirs.get(name), dir.getValue());
+            if (sub.isEmpty()) {
+                tree.dirs.remove(name);
+            } else {
+                tree.dirs.put(name, ObjectId.fromString(sub.write(store)));
+                tree.files.remove(name);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Lists every file under a tree.
+     * @param store is the object store.
+     * @param root is the SHA-1 of the tree, or null for an empty tree.
+     * @return the files.
+     */
+    static Manifest manifest(ObjectStore store, String root) {
+        Manifest.Builder result = new Manifest.Builder();
+        manifest(store, root == null ? null : ObjectId.fromString(root), "",
+                result, new byte[Utils.UID_BYTES]);
+        return result.build();
+    }
+
+    /**
+     * Adds every file under a tree to a manifest in sorted order.  Within
+     * a tree, a subdirectory sorts as its name followed by '/', which puts
+     * it where the paths of its files belong among the other names.
+     * @param store is the object store.
+     * @param id is the id of the tree, or null for an empty tree.
+     * @param prefix is the path of the tree followed by '/', or empty for
+     *               the root.
+     * @param result is the manifest being built.
+     * @param raw is a buffer for one raw id.
+     */
+    private static void manifest(ObjectStore store, ObjectId id,
+                                 String prefix, Manifest.Builder result,
+                                 byte[] raw) {
+        Tree tree = read(store, id);
+        TreeMap<String, ObjectId> names = new TreeMap<>(tree.files);
+        for (Map.Entry<String, ObjectId> dir : tree.dirs.entrySet()) {
+            names.put(dir.getKey() + "/", dir.getValue());
+        }
+        for (Map.Entry<String, ObjectId> name : names.entrySet()) {
+            if (name.getKey().endsWith("/")) {
+                manifest(store, name.getValue(), prefix + name.getKey(),
+                        result, raw);
+            } else {
+                name.getValue().copyTo(raw, 0);
+                result.add(prefix + name.getKey(), raw, 0);
+            }
+        }
+    }
+
+    /**
+     * Finds one file under a tree, reading only the trees on its path.
+     * @param store is the object store.
+     * @param root is the SHA-1 of the tree, or null for an empty tree.
+     * @param path is the path of the file.
+     * @return the blob id of the file, or null if there is none.
+     */
+    static String lookup(ObjectStore store, String root, String path) {
+        ObjectId id = root == null ? null : ObjectId.fromString(root);
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', start)) {
+            if (id == null) {
+                return null;
+            }
+            id = read(store, id).dirs.get(path.substring(start, slash));
+            start = slash + 1;
+        }
+        if (id == null) {
+            return null;
+        }
+        ObjectId blob = read(store, id).files.get(path.substring(start));
+        return blob == null ? null : blob.toString();
+    }
+
+    /**
+     * Compares two trees, skipping every subtree whose id is the same in
+     * both.
+     * @param store is the object store.
+     * @param one is the SHA-1 of the first tree, or null for an empty tree.
+     * @param two is the SHA-1 of the second tree, or null for an empty
+     *            tree.
+     * @return map of the paths of the files that differ to their blob ids
+     *         in the first and the second tree, either of which is null
+     *         where that tree lacks the file.
+     */
+    static TreeMap<String, String[]> diff(ObjectStore store, String one,
+                                          String two) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        diff(store, one == null ? null : ObjectId.fromString(one),
+                two == null ? null : ObjectId.fromString(two), "", result);
+        return result;
+    }
+
+    /**
+     * Adds the differences between two trees to a map.
+     * @param store is the object store.
+     * @param one is the id of the first tree, or null.
+     * @param two is the id of the second tree, or null.
+     * @param prefix is the path of the trees followed by '/', or empty for
+     *               the root.
+     * @param result is the map of differing paths to pairs of blob ids.
+     */
+    private static void diff(ObjectStore store, ObjectId one, ObjectId two,
+                             String prefix, Map<String, String[]> result) {
+        if (one != null && one.equals(two)) {
+            return;
+        }
+        Tree first = read(store, one);
+        Tree second = read(store, two);
+        TreeSet<String> names = new TreeSet<>(first.files.keySet());
+        names.addAll(second.files.keySet());
+        for (String name : names) {
+            ObjectId a = first.files.get(name);
+            ObjectId b = second.files.get(name);
+            if (a == null || !a.equals(b)) {
+                result.put(prefix + name, new String[] {
+                    a == null ? null : a.toString(),
+                    b == null ? null : b.toString()});
+            }
+        }
+        names = new TreeSet<>(first.dirs.keySet());
+        names.addAll(second.dirs.keySet());
+        for (String name : names) {
+            diff(store, first.dirs.get(name), second.dirs.get(name),
+                    prefix + name + "/", result);
+        }
+    }
+
+    /** SHA-1 of the empty tree, the root tree of the initial commit. */
+    static final String EMPTY = Utils.sha1(new Tree().encode());
+
+    /** First word of an encoded tree ("GTRE"). */
+    private static final int MAGIC = 0x47545245;
+
+    /** Kind byte of a file entry. */
+    private static final int FILE = 'F';
+
+    /** Kind byte of a subdirectory entry. */
+    private static final int DIR = 'D';
+
+    /** Blob ids of the files in this directory, by name. */
+    private final TreeMap<String, ObjectId> files = new TreeMap<>();
+
+    /** Tree ids of the subdirectories of this directory, by name. */
+    private final TreeMap<String, ObjectId> dirs = new TreeMap<>();
+}
@@ -4,6 +4,20 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +34,491 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** Commits survive a round trip through the binary commit format. */
+    @Test
+    public void commitCodecTest() {
+        Commit init = new Commit("Wed Dec 31 16:00:00 1969 -0800",
+                "initial commit");
+        HashMap<String, String> tracking = new HashMap<>();
+        tracking.put("wug.txt", Utils.sha1("wug"));
+        tracking.put("notwug.txt", Utils.sha1("notwug"));
+        MemoryStore store = new MemoryStore();
+        Commit merge = new Commit("merged",
+                Tree.write(store, Manifest.of(tracking)),
+                init.getCommitId(), Utils.sha1("other"), "master");
+        Commit decoded = Commit.decode(merge.encode());
+        assertEquals(merge.getCommitId(), decoded.getCommitId());
+        assertEquals(merge.getDateTime(), decoded.getDateTime());
+        assertEquals(merge.getMessage(), decoded.getMessage());
+        assertEquals(merge.getParent(), decoded.getParent());
+        assertEquals(merge.getParentTwo(), decoded.getParentTwo());
+        assertEquals(merge.getTree(), decoded.getTree());
+        assertManifest(tracking, Tree.manifest(store, decoded.getTree()));
+        assertTrue(decoded.isMerge());
+        assertNull(Commit.decode(init.encode()).getParent());
+        assertEquals(init.getCommitId(),
+                Commit.decode(Utils.serialize(init)).getCommitId());
+    }
+
+    /** Commits keep their time in seconds through the commit format, and
+     *  dates given to log are parsed in each accepted form. */
+    @Test
+    public void commitTimeTest() {
+        Commit init = new Commit("Wed Dec 31 16:00:00 1969 -0800",
+                "initial commit");
+        assertEquals(0, init.getTime());
+        Commit next = new Commit("wug", Tree.EMPTY, init.getCommitId(),
+                "master");
+        assertEquals(next.getTime(),
+                Commit.decode(next.encode()).getTime());
+        assertEquals(Long.valueOf(0),
+                Commit.parseDate("Wed Dec 31 16:00:00 1969 -0800"));
+        assertEquals(Long.valueOf(1234), Commit.parseDate("@1234"));
+        long day = Commit.parseDate("2020-02-29");
+        assertEquals(Long.valueOf(day + 3600 + 120),
+                Commit.parseDate("2020-02-29T01:02"));
+        assertEquals(Long.valueOf(day + 3600 + 120 + 3),
+                Commit.parseDate("2020-02-29 01:02:03"));
+        assertNull(Commit.parseDate("2021-02-29"));
+        assertNull(Commit.parseDate("yesterday"));
+        assertNull(Commit.parseDate("2020-02-29 01:02 junk"));
+    }
+
+    /** Trees list nested files, and updating one file rewrites only the
+     *  trees on its path. */
+    @Test
+    public void treeTest() {
+        MemoryStore store = new MemoryStore();
+        HashMap<String, String> files = new HashMap<>();
+        files.put("wug.txt", Utils.sha1("wug"));
+        files.put("src/a.txt", Utils.sha1("a"));
+        files.put("src/deep/b.txt", Utils.sha1("b"));
+        files.put("doc/c.txt", Utils.sha1("c"));
+        String root = Tree.write(store, Manifest.of(files));
+        assertManifest(files, Tree.manifest(store, root));
+        assertEquals(Utils.sha1("b"),
+                Tree.lookup(store, root, "src/deep/b.txt"));
+        assertNull(Tree.lookup(store, root, "src/b.txt"));
+        assertNull(Tree.lookup(store, root, "nowhere/b.txt"));
+
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("src/deep/b.txt", Utils.sha1("b2"));
+        changes.put("doc/c.txt", null);
+        int before = store.objects.size();
+        String next = Tree.update(store, root, changes);
+        assertEquals(3, store.objects.size() - before);
+        assertEquals(2, Tree.diff(store, root, next).size());
+        String[] gone = Tree.diff(store, root, next).get("doc/c.txt");
+        assertEquals(Utils.sha1("c"), gone[0]);
+        assertNull(gone[1]);
+        files.put("src/deep/b.txt", Utils.sha1("b2"));
+        files.remove("doc/c.txt");
+        assertManifest(files, Tree.manifest(store, next));
+        assertEquals(next, Tree.write(store, Manifest.of(files)));
+        assertTrue(Tree.diff(store, next, next).isEmpty());
+    }
+
+    /** Manifests find files by path and compare blob ids in place, and
+     *  ids survive a round trip through raw bytes. */
+    @Test
+    public void manifestTest() {
+        HashMap<String, String> files = new HashMap<>();
+        files.put("b.txt", Utils.sha1("b"));
+        files.put("a/z.txt", Utils.sha1("z"));
+        files.put("a.txt", Utils.sha1("a"));
+        Manifest manifest = Manifest.of(files);
+        assertManifest(files, manifest);
+        assertEquals("a.txt", manifest.path(0));
+        assertEquals("a/z.txt", manifest.path(1));
+        assertTrue(manifest.find("c.txt") < 0);
+        assertEquals(Utils.sha1("z"), manifest.get("a/z.txt"));
+        assertTrue(manifest.matches(2, Utils.sha1("b")));
+        assertFalse(manifest.matches(2, Utils.sha1("a")));
+        assertFalse(manifest.matches(2, null));
+        files.put("b.txt", Utils.sha1("b2"));
+        Manifest other = Manifest.of(files);
+        assertTrue(manifest.path(1) == other.path(1));
+        ObjectId id = ObjectId.fromString(Utils.sha1("a"));
+        assertEquals(id, manifest.id(0));
+        assertEquals(Utils.sha1("a"), id.toString());
+        assertFalse(id.equals(manifest.id(1)));
+    }
+
+    /**
+     * Checks that a manifest holds exactly a set of files.
+     * @param files is a map of file paths to blob ids.
+     * @param manifest is the manifest.
+     */
+    private static void assertManifest(HashMap<String, String> files,
+                                       Manifest manifest) {
+        assertEquals(files.size(), manifest.size());
+        for (int i = 0; i < manifest.size(); i += 1) {
+            assertEquals(files.get(manifest.path(i)), manifest.hex(i));
+            if (i > 0) {
+                assertTrue(manifest.path(i - 1).compareTo(
+                        manifest.path(i)) < 0);
+            }
+        }
+    }
+
+    /** An object store held in memory. */
+    private static class MemoryStore implements ObjectStore {
+        @Override
+        public boolean contains(String id) {
+            return objects.containsKey(id);
+        }
+
+        @Override
+        public byte[] read(String id) {
+            return objects.get(id);
+        }
+
+        @Override
+        public boolean copyTo(String id, File dest) {
+            Utils.writeContents(dest, (Object) objects.get(id));
+            return true;
+        }
+
+        @Override
+        public void write(String id, byte[] contents) {
+            objects.putIfAbsent(id, contents);
+        }
+
+        /** Contents of objects by SHA-1. */
+        private final HashMap<String, byte[]> objects = new HashMap<>();
+    }
+
+    /** Objects decode to their contents whether or not they were deflated,
+     *  and headerless blobs decode to themselves. */
+    @Test
+    public void objectCodecTest() {
+        byte[] text = "wug wug wug wug wug wug wug wug wug wug\n".repeat(100)
+                .getBytes();
+        byte[] noise = new byte[] {3, 1, 4, 1, 5, 9, 2, 6};
+        assertTrue(ObjectCodec.encode(text).length < text.length);
+        assertArrayEquals(text, ObjectCodec.decode(ObjectCodec.encode(text)));
+        assertArrayEquals(noise,
+                ObjectCodec.decode(ObjectCodec.encode(noise)));
+        assertArrayEquals(noise, ObjectCodec.decode(noise));
+    }
+
+    /** The index keeps its entries and flags across a write and read, and
+     *  never trusts stat data as new as the index file. */
+    @Test
+    public void indexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-index").toFile();
+        File work = new File(dir, "wug.txt");
+        Utils.writeContents(work, "wug");
+        Index index = new Index();
+        Index.Entry wug = new Index.Entry("wug.txt", Utils.sha1("wug"),
+                Index.STAGED);
+        wug.refresh(work);
+        index.put(wug);
+        index.put(new Index.Entry("notwug.txt", Utils.sha1("notwug"),
+                Index.REMOVED));
+        index.put(new Index.Entry("a.txt", Utils.sha1("a"), 0));
+        File file = new File(dir, "index");
+        index.write(file);
+        Index read = Index.read(file);
+        assertEquals(index.tracked(), read.tracked());
+        assertEquals(index.staged(), read.staged());
+        assertEquals(index.removed(), read.removed());
+        work.setLastModified(file.lastModified() + 60000);
+        assertFalse(read.unchanged(read.get("wug.txt"), work));
+        read.committed();
+        assertTrue(read.staged().isEmpty());
+        assertNull(read.get("notwug.txt"));
+        deleteAll(dir);
+    }
+
+    /** A transaction replaces its files only when it commits, and recovery
+     *  finishes a committed journal and ignores leftover temporary files. */
+    @Test
+    public void transactionTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-tx").toFile();
+        new File(dir, "blobs").mkdir();
+        File head = new File(dir, "HEAD");
+        Utils.writeContents(head, "one");
+        Utils.writeContents(new File(dir, "config"),
+                "# comment\ndurability = fast\n");
+        assertFalse(Config.read(dir).safe());
+        Transaction tx = new Transaction(dir, new ObjectDatabase(dir));
+        tx.write(Utils.sha1("wug"), "wug".getBytes());
+        assertTrue(tx.contains(Utils.sha1("wug")));
+        tx.replace(head, "two".getBytes());
+        assertEquals("one", Utils.readContentsAsString(head));
+        tx.commit();
+        assertEquals("two", Utils.readContentsAsString(head));
+        assertEquals("wug", new String(new ObjectDatabase(dir)
+                .read(Utils.sha1("wug"))));
+        assertFalse(Transaction.temporary(head).exists());
+
+        Utils.writeContents(Transaction.temporary(head), "three");
+        Transaction.recover(dir);
+        assertEquals("two", Utils.readContentsAsString(head));
+        Utils.writeContents(new File(dir, "transaction"), "HEAD\n");
+        Transaction.recover(dir);
+        assertEquals("three", Utils.readContentsAsString(head));
+        assertFalse(new File(dir, "transaction").exists());
+        Transaction.recover(dir);
+        assertEquals("three", Utils.readContentsAsString(head));
+        deleteAll(dir);
+    }
+
+    /** The commit index finds commits by any unique prefix of their ids,
+     *  both those it indexes and those appended since, and is rewritten when
+     *  the graph no longer matches it. */
+    @Test
+    public void commitIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-cix").toFile();
+        File file = new File(dir, "commit-graph");
+        List<Commit> commits = new ArrayList<>();
+        commits.add(new Commit("Wed Dec 31 16:00:00 1969 -0800",
+                "initial commit"));
+        for (int i = 1; i < 400; i += 1) {
+            commits.add(new Commit("wug " + i, Tree.EMPTY,
+                    commits.get(i - 1).getCommitId(), "master"));
+        }
+        CommitGraph.write(file, commits.subList(0, 300));
+        CommitGraph graph = new CommitGraph(file);
+        for (int i = 300; i < 400; i += 1) {
+            graph.append(commits.get(i));
+        }
+        for (int i = 0; i < 400; i += 1) {
+            String id = commits.get(i).getCommitId();
+            assertEquals(i, graph.find(id));
+            assertEquals(i, graph.resolve(id.substring(0, 9)));
+        }
+        assertEquals(CommitIndex.AMBIGUOUS, graph.resolve("a"));
+        assertEquals(-1, graph.find(Utils.sha1("wug")));
+        assertEquals(-1, graph.resolve(""));
+        assertEquals(-1, graph.resolve("xyz"));
+        assertEquals(-1, graph.resolve(
+                commits.get(0).getCommitId().toUpperCase()));
+
+        commits.set(399, new Commit("notwug", Tree.EMPTY,
+                commits.get(398).getCommitId(), "master"));
+        CommitGraph.write(file, commits);
+        graph = new CommitGraph(file);
+        assertEquals(399, graph.find(commits.get(399).getCommitId()));
+        deleteAll(dir);
+    }
+
+    /** In a criss-cross history both best common ancestors are found, each
+     *  once, and commits reached along either parent are ancestors. */
+    @Test
+    public void mergeBaseTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-base").toFile();
+        File file = new File(dir, "commit-graph");
+        List<Commit> commits = new ArrayList<>();
+        commits.add(new Commit("Wed Dec 31 16:00:00 1969 -0800",
+                "initial commit"));
+        String initial = commits.get(0).getCommitId();
+        commits.add(new Commit("wug", Tree.EMPTY, initial, "master"));
+        commits.add(new Commit("notwug", Tree.EMPTY, initial, "other"));
+        String wug = commits.get(1).getCommitId();
+        String notwug = commits.get(2).getCommitId();
+        commits.add(new Commit("merge other", Tree.EMPTY, wug, notwug,
+                "master"));
+        commits.add(new Commit("merge master", Tree.EMPTY, notwug, wug,
+                "other"));
+        commits.add(new Commit("wug 2", Tree.EMPTY,
+                commits.get(3).getCommitId(), "master"));
+        commits.add(new Commit("notwug 2", Tree.EMPTY,
+                commits.get(4).getCommitId(), "other"));
+        CommitGraph.write(file, commits);
+        MergeBase walk = new MergeBase(new CommitGraph(file));
+        List<Integer> bases = new ArrayList<>(walk.bases(5, 6));
+        bases.sort(null);
+        assertEquals(List.of(1, 2), bases);
+        assertEquals(2, walk.bases(3, 4).size());
+        assertTrue(bases.contains(walk.base(5, 6)));
+        assertEquals(List.of(0), walk.bases(1, 2));
+        assertEquals(List.of(1), walk.bases(5, 1));
+        assertEquals(List.of(6), walk.bases(6, 6));
+        assertTrue(walk.isAncestor(2, 5));
+        assertTrue(walk.isAncestor(0, 6));
+        assertFalse(walk.isAncestor(1, 2));
+        assertFalse(walk.isAncestor(5, 6));
+        deleteAll(dir);
+    }
+
+    /** The message index finds commits by whole message, by words in any
+     *  case and by word prefixes, and keeps few segments as it grows. */
+    @Test
+    public void messageIndexTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-msg").toFile();
+        File file = new File(dir, "commit-graph");
+        File messages = new File(dir, "messages");
+        List<Commit> commits = new ArrayList<>();
+        commits.add(new Commit("Wed Dec 31 16:00:00 1969 -0800",
+                "initial commit"));
+        CommitGraph.write(file, commits);
+        CommitGraph graph = new CommitGraph(file);
+        for (int i = 1; i < 300; i += 1) {
+            String message = i % 3 == 0 ? "Fix wug " + i : "add-wugs " + i;
+            commits.add(new Commit(message, Tree.EMPTY,
+                    commits.get(i - 1).getCommitId(), "master"));
+            graph.append(commits.get(i));
+            new MessageIndex(messages, graph,
+                row -> commits.get(row).getMessage()).update();
+        }
+        assertTrue(messages.list().length <= 10);
+        MessageIndex index = new MessageIndex(messages, graph,
+            row -> commits.get(row).getMessage());
+        assertTrue(Arrays.equals(new int[] {0},
+                index.exact("initial commit")));
+        assertTrue(Arrays.equals(new int[] {42},
+                index.exact("Fix wug 42")));
+        assertEquals(0, index.exact("fix wug 42").length);
+        assertTrue(Arrays.equals(new int[] {42},
+                index.search("WUG fix 42")));
+        assertEquals(99, index.search("wug").length);
+        assertEquals(299, index.search("wug*").length);
+        assertEquals(75, index.search("ADD 1*").length);
+        assertTrue(Arrays.equals(new int[] {10, 100, 101, 103, 104, 106,
+            107, 109}, index.search("add 10*")));
+        assertEquals(0, index.search("wugz*").length);
+        assertEquals(List.of("add", "wugs", "1"),
+                MessageIndex.tokens("Add WUGS, add 1!"));
+        deleteAll(dir);
+    }
+
+    /** The commit log lists commits newest first by row or by time, and
+     *  drops a partly written record before appending. */
+    @Test
+    public void commitLogTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-log").toFile();
+        File graphFile = new File(dir, "commit-graph");
+        File logFile = new File(dir, "commit-log");
+        List<Commit> commits = new ArrayList<>();
+        for (int second : new int[] {5, 1, 3, 2, 4, 0}) {
+            commits.add(new Commit("Wed Dec 31 16:00:0" + second
+                    + " 1969 -0800", "wug " + second));
+        }
+        CommitGraph.write(graphFile, commits);
+        CommitLog log = new CommitLog(logFile);
+        log.update(new CommitGraph(graphFile), commits::get);
+        assertEquals("[5, 4, 3, 2, 1, 0]", rows(log, false));
+        assertEquals("[0, 4, 2, 3, 1, 5]", rows(log, true));
 
+        Files.write(logFile.toPath(), new byte[] {0, 0, 1},
+                StandardOpenOption.APPEND);
+        assertEquals("[5, 4, 3, 2, 1, 0]", rows(log, false));
+        commits.add(new Commit("merged", Tree.EMPTY,
+                commits.get(0).getCommitId(), commits.get(1).getCommitId(),
+                "master"));
+        CommitGraph.write(graphFile, commits);
+        log.update(new CommitGraph(graphFile), commits::get);
+        assertEquals("[6, 0, 4, 2, 3, 1, 5]", rows(log, true));
+        List<CommitLog.Entry> entries = new ArrayList<>();
+        log.read(false, entries::add);
+        assertEquals(commits.get(1).getCommitId(), entries.get(0).parentTwo);
+        assertEquals("merged", entries.get(0).message);
+        assertNull(entries.get(1).parent);
+        assertEquals(commits.get(5).getDateTime(), entries.get(1).date);
+        deleteAll(dir);
+    }
+
+    /**
+     * Deletes a file, or a directory and everything in it.
+     * @param file is the file or directory.
+     */
+    private static void deleteAll(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                deleteAll(f);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Lists the rows of a commit log in the order it reads them.
+     * @param log is the commit log.
+     * @param byTime is true to read it in order of commit time.
+     * @return the rows.
+     */
+    private static String rows(CommitLog log, boolean byTime) {
+        List<Integer> result = new ArrayList<>();
+        log.read(byTime, entry -> result.add(entry.row));
+        return result.toString();
+    }
+
+    /** Tracing counts hashing and serialization from every thread, and
+     *  nothing when off. */
+    @Test
+    public void traceTest() {
+        Utils.sha1("wug");
+        Trace.begin("wug");
+        Utils.sha1("wug", "notwug");
+        Utils.serialize("wug");
+        IntStream.range(0, 1000).parallel().forEach(i -> Utils.sha1("wug"));
+        String summary = Trace.summary(0);
+        assertTrue(summary.startsWith("{\"command\":\"wug\",\"status\":0,"));
+        assertTrue(summary.contains(
+                "\"hash\":{\"count\":1001,\"bytes\":3009,"));
+        assertTrue(summary.contains("\"serialize\":{\"count\":1,"));
+        assertTrue(summary.contains("\"read\":{\"count\":0,\"bytes\":0,"));
+        Utils.sha1("wug");
+        Trace.begin("notwug");
+        assertTrue(Trace.summary(1).contains("\"hash\":{\"count\":0,"));
+    }
 
+    /** The object store records its writes and reads as Flight Recorder
+     *  events while a recording has them enabled. */
+    @Test
+    public void eventsTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet-jfr").toFile();
+        new File(dir, "blobs").mkdir();
+        ObjectDatabase store = new ObjectDatabase(dir);
+        File jfr = new File(dir, "events.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("gitlet.BlobWrite");
+            recording.enable("gitlet.BlobRead");
+            recording.start();
+            store.write(Utils.sha1("wug"), "wug".getBytes());
+            store.read(Utils.sha1("wug"));
+            recording.stop();
+            recording.dump(jfr.toPath());
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(
+                jfr.toPath());
+        assertEquals(2, events.size());
+        for (RecordedEvent event : events) {
+            assertEquals(Utils.sha1("wug"), event.getString("id"));
+            assertEquals(3, event.getLong("size"));
+        }
+        deleteAll(dir);
+    }
+
+    /** The object cache evicts the least recently used values to stay
+     *  within its weight, and counts its hits and misses. */
+    @Test
+    public void objectCacheTest() {
+        ObjectCache<String> cache = new ObjectCache<>(80);
+        for (char c = 'a'; c < 'i'; c += 1) {
+            cache.put("" + c, "wug" + c, 10);
+        }
+        assertNull(cache.get("z"));
+        assertEquals("wuga", cache.get("a"));
+        cache.put("i", "wugi", 10);
+        assertNull(cache.get("b"));
+        String wuga = cache.get("a");
+        assertEquals("wuga", wuga);
+        assertEquals(8, cache.size());
+        assertEquals(80, cache.weight());
+        assertEquals(1, cache.evictions());
+        cache.reweigh("a", "wugb", 11);
+        assertEquals(8, cache.size());
+        cache.reweigh("a", wuga, 11);
+        assertEquals(7, cache.size());
+        assertEquals(70, cache.weight());
+        cache.put("j", "wugj", 11);
+        assertNull(cache.get("j"));
+        assertEquals(2, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+}
@@ -0,0 +1,186 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/** One-time upgrades of repositories written by older versions of Gitlet.
+ *  The format version of a repository is kept in .gitlet/version;
+ *  repositories without that file have version 1.  Each upgrade step is
+ *  safe to rerun if it is interrupted.
+ *  @author Austin Ralleta
+ */
+class Upgrade {
+    /**
+     * Brings a repository up to the current format version.
+     * @param gitletDir is the .gitlet directory.
+     */
+    static void run(File gitletDir) {
+        File versionFile = Utils.join(gitletDir, "version");
+        int version = 1;
+        if (versionFile.exists()) {
+            version = Integer.parseInt(
+                    Utils.readContentsAsString(versionFile).trim());
+        }
+        if (version > CURRENT) {
+            System.out.println("This repository was written by a newer "
+                    + "version of Gitlet.");
+            Main.exit(0);
+        }
+        while (version < CURRENT) {
+            switch (version) {
+            case 1:
+                binaryCommits(gitletDir);
+                break;
+            case 2:
+                commitGraph(gitletDir);
+                break;
+            case 3:
+                index(gitletDir);
+                break;
+            case 4:
+                trees(gitletDir);
+                break;
+            case 5:
+                // Commits in format 3 store their time in seconds;
+                // formats 1-2 are still read, so there is nothing to
+                // rewrite.
+                break;
+            default:
+                throw Utils.error("No upgrade from version %d.", version);
+            }
+            version += 1;
+            Utils.writeContents(versionFile, String.valueOf(version));
+        }
+    }
+
+    /**
+     * Version 2: rewrites every commit from Java serialization into the
+     * binary commit format.
+     * @param gitletDir is the .gitlet directory.
+     */
+    private static void binaryCommits(File gitletDir) {
+        File commits = Utils.join(gitletDir, "commits");
+        List<String> names = Utils.plainFilenamesIn(commits);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (name.length() == Utils.UID_LENGTH) {
+                File commitFile = Utils.join(commits, name);
+                Commit.read(commitFile).write(commitFile);
+            }
+        }
+    }
+
+    /**
+     * Version 3: writes the commit graph from the commit files.
+     * @param gitletDir is the .gitlet directory.
+     */
+    private static void commitGraph(File gitletDir) {
+        File commits = Utils.join(gitletDir, "commits");
+        HashMap<String, Commit> all = new HashMap<>();
+        for (String name : Utils.plainFilenamesIn(commits)) {
+            if (name.length() == Utils.UID_LENGTH) {
+                all.put(name, Commit.read(Utils.join(commits, name)));
+            }
+        }
+        List<Commit> ordered = new ArrayList<>();
+        HashSet<String> done = new HashSet<>();
+        ArrayDeque<Commit> stack = new ArrayDeque<>();
+        for (Commit start : all.values()) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                Commit top = stack.peek();
+                if (done.contains(top.getCommitId())) {
+                    stack.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (String p : new String[] {top.getParent(),
+                                              top.getParentTwo()}) {
+                    if (p != null && all.containsKey(p)
+                            && !done.contains(p)) {
+                        stack.push(all.get(p));
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    done.add(top.getCommitId());
+                    ordered.add(top);
+                }
+            }
+        }
+        CommitGraph.write(Utils.join(gitletDir, "commit-graph"), ordered);
+    }
+
+    /**
+     * Version 4: replaces the serialized maps of staged, removed and
+     * tracked files, and the marker files beside them, with the index.
+     * @param gitletDir is the .gitlet directory.
+     */
+    @SuppressWarnings("unchecked")
+    private static void index(File gitletDir) {
+        File stage = Utils.join(gitletDir, "stage");
+        File removal = Utils.join(gitletDir, "removal");
+        File trackedFile = Utils.join(gitletDir, "tracked");
+        if (!trackedFile.exists()) {
+            return;
+        }
+        HashMap<String, String> staged = Utils.readObject(
+                Utils.join(stage, "staged"), HashMap.class);
+        HashMap<String, String> removed = Utils.readObject(
+                Utils.join(removal, "removed"), HashMap.class);
+        HashMap<String, String> tracked = Utils.readObject(trackedFile,
+                HashMap.class);
+        Index result = new Index();
+        for (Map.Entry<String, String> file : tracked.entrySet()) {
+            result.put(new Index.Entry(file.getKey(), file.getValue(), 0));
+        }
+        for (Map.Entry<String, String> file : staged.entrySet()) {
+            result.put(new Index.Entry(file.getKey(), file.getValue(),
+                    Index.STAGED));
+        }
+        for (Map.Entry<String, String> file : removed.entrySet()) {
+            result.put(new Index.Entry(file.getKey(), file.getValue(),
+                    Index.REMOVED));
+        }
+        result.write(Utils.join(gitletDir, "index"));
+        for (File dir : new File[] {stage, removal}) {
+            for (String name : Utils.plainFilenamesIn(dir)) {
+                Utils.join(dir, name).delete();
+            }
+            dir.delete();
+        }
+        trackedFile.delete();
+    }
+
+    /**
+     * Version 5: stores the tracked files of every commit as trees and
+     * rewrites the commit to name its root tree.  Commit ids do not
+     * change.
+     * @param gitletDir is the .gitlet directory.
+     */
+    private static void trees(File gitletDir) {
+        File commits = Utils.join(gitletDir, "commits");
+        ObjectDatabase store = new ObjectDatabase(gitletDir);
+        for (String name : Utils.plainFilenamesIn(commits)) {
+            if (name.length() == Utils.UID_LENGTH) {
+                File commitFile = Utils.join(commits, name);
+                Commit commit = Commit.read(commitFile);
+                if (commit.getTree() == null) {
+                    commit.setTree(Tree.write(store, commit.getManifest()));
+                    commit.write(commitFile);
+                }
+            }
+        }
+    }
+
+    /** Format version written by this version of Gitlet. */
+    static final int CURRENT = 6;
+}
@@ -9,6 +9,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
@@ -32,25 +34,21 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        MessageDigest md = sha1Digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
         }
+        Formatter result = new Formatter();
+        for (byte b : md.digest()) {
+            result.format("%02x", b);
+        }
+        return result.toString();
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -59,6 +57,69 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the SHA-1 hash of the contents of FILE, which is read through
+     *  a fixed-size buffer rather than all at once.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        long start = Trace.start();
+        MessageDigest md = sha1Digest();
+        long size = 0;
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                size += buf.remaining();
+                md.update(buf);
+                buf.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count(Trace.READ, size, start);
+        return bytesToUid(md.digest(), 0);
+    }
+
+    /** Returns a new SHA-1 message digest, which counts its hashing while
+     *  tracing is on (see Trace). */
+    static MessageDigest sha1Digest() {
+        try {
+            return Trace.counted(MessageDigest.getInstance("SHA-1"));
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** The length of a complete SHA-1 UID in bytes. */
+    static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** Returns the UID_BYTES raw bytes of the hexadecimal SHA-1 UID ID. */
+    static byte[] uidToBytes(String id) {
+        if (id.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("not a full SHA-1 UID");
+        }
+        byte[] result = new byte[UID_BYTES];
+        for (int i = 0; i < UID_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(id.substring(2 * i,
+                    2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Returns the hexadecimal SHA-1 UID whose raw bytes are the UID_BYTES
+     *  bytes of RAW starting at OFFSET. */
+    static String bytesToUid(byte[] raw, int offset) {
+        char[] result = new char[UID_LENGTH];
+        for (int i = 0; i < UID_BYTES; i += 1) {
+            int b = raw[offset + i] & 0xff;
+            result[2 * i] = HEX_DIGITS[b >>> 4];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Lower-case hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -93,8 +154,11 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        long start = Trace.start();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] result = Files.readAllBytes(file.toPath());
+            Trace.count(Trace.READ, result.length, start);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -112,6 +176,7 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        long start = Trace.start();
         try {
             if (file.isDirectory()) {
                 throw
@@ -119,14 +184,19 @@ class Utils {
             }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            long size = 0;
             for (Object obj : contents) {
+                byte[] bytes;
                 if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
+                    bytes = (byte[]) obj;
                 } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                    bytes = ((String) obj).getBytes(StandardCharsets.UTF_8);
                 }
+                str.write(bytes);
+                size += bytes.length;
             }
             str.close();
+            Trace.count(Trace.WRITE, size, start);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -136,11 +206,15 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        long start = Trace.start();
         try {
             ObjectInputStream in =
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            if (start != 0) {
+                Trace.count(Trace.DESERIALIZE, file.length(), start);
+            }
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -205,12 +279,15 @@ class Utils {
 
     /** Returns a byte array containing the serialized contents of OBJ. */
     static byte[] serialize(Serializable obj) {
+        long start = Trace.start();
         try {
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
             ObjectOutputStream objectStream = new ObjectOutputStream(stream);
             objectStream.writeObject(obj);
             objectStream.close();
-            return stream.toByteArray();
+            byte[] result = stream.toByteArray();
+            Trace.count(Trace.SERIALIZE, result.length, start);
+            return result;
         } catch (IOException excp) {
             throw error("Internal error serializing commit.");
         }
@@ -0,0 +1,184 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A check of working files against blobs, spread across cores.  Checks
+ *  are queued with check, examined together by run on the common
+ *  ForkJoinPool (each one a stat and, unless the index's stat data vouches
+ *  for the file, a hash of its contents), and then read back in whatever
+ *  order the caller prints them.  Only run touches the index, on the
+ *  calling thread, so the index is never shared between threads while
+ *  it changes.  Only files found missing or modified are remembered, so
+ *  a scan of a clean tree keeps nothing per file.
+ *  @author Austin Ralleta
+ */
+class WorkTreeScan {
+    /**
+     * Prepares a scan.
+     * @param theIndex is the index whose stat data and VALID flags are
+     *                 trusted and refreshed.
+     * @param dir is the working directory.
+     */
+    WorkTreeScan(Index theIndex, File dir) {
+        index = theIndex;
+        workDir = dir;
+    }
+
+    /**
+     * Queues a check of a working file.  Files whose entry the monitor
+     * vouches for are known clean at once.
+     * @param name is the name of the file.
+     * @param blobHash is the SHA-1 of the blob it should match.
+     */
+    void check(String name, String blobHash) {
+        Index.Entry entry = index.get(name);
+        if (entry == null || !entry.isValid()
+                || !entry.id.equals(blobHash)) {
+            pending.add(new String[] {name, blobHash});
+        }
+    }
+
+    /**
+     * Queues a check of a working file against its blob in a manifest,
+     * comparing the blob id in place.
+     * @param manifest is the manifest.
+     * @param i is the position of the file in the manifest.
+     */
+    void check(Manifest manifest, int i) {
+        String name = manifest.path(i);
+        Index.Entry entry = index.get(name);
+        if (entry == null || !entry.isValid()
+                || !manifest.matches(i, entry.id)) {
+            pending.add(new String[] {name, manifest.hex(i)});
+        }
+    }
+
+    /**
+     * Examines every queued file, in parallel when there are enough of
+     * them, then records fresh stat data of files found clean by hashing.
+     * @param monitored indicates whether a monitor token covers this scan,
+     *                  so clean files may be flagged VALID.
+     * @return true if the index changed.
+     */
+    boolean run(boolean monitored) {
+        ConcurrentHashMap<String, Result> found = new ConcurrentHashMap<>();
+        if (pending.size() < PARALLEL_THRESHOLD) {
+            for (String[] p : pending) {
+                found.put(p[0], examine(p[0], p[1]));
+            }
+        } else {
+            pending.parallelStream().forEach(
+                p -> found.put(p[0], examine(p[0], p[1])));
+        }
+        boolean changed = false;
+        for (String[] p : pending) {
+            Result result = found.get(p[0]);
+            if (!result.exists) {
+                missing.add(p[0]);
+            } else if (!result.clean) {
+                modified.add(p[0]);
+            }
+            Index.Entry entry = index.get(p[0]);
+            if (!result.clean || entry == null || !entry.id.equals(p[1])) {
+                continue;
+            }
+            if (result.stat != null) {
+                entry.setStat(result.stat);
+                changed = true;
+            }
+            if (monitored) {
+                entry.flags |= Index.VALID;
+                changed = true;
+            }
+        }
+        pending.clear();
+        return changed;
+    }
+
+    /**
+     * Determine if a checked file exists.
+     * @param name is the name of the file.
+     * @return true if it exists.
+     */
+    boolean exists(String name) {
+        return !missing.contains(name);
+    }
+
+    /**
+     * Determine if a checked file matches its blob.
+     * @param name is the name of the file.
+     * @return true if it exists and has the blob's contents.
+     */
+    boolean clean(String name) {
+        return !missing.contains(name) && !modified.contains(name);
+    }
+
+    /**
+     * Examines one working file.  Runs on pool threads, so it only reads
+     * the index.
+     * @param name is the name of the file.
+     * @param blobHash is the SHA-1 of the blob it should match.
+     * @return what was found.
+     */
+    private Result examine(String name, String blobHash) {
+        File file = Utils.join(workDir, name);
+        long[] stat = Index.stat(file);
+        if (stat == null) {
+            return new Result(false, false, null);
+        }
+        Index.Entry entry = index.get(name);
+        if (entry != null && entry.id.equals(blobHash)
+                && index.unchanged(entry, stat)) {
+            return new Result(true, true, null);
+        }
+        boolean clean = blobHash.equals(Utils.sha1(file));
+        return new Result(true, clean, clean ? stat : null);
+    }
+
+    /** What a check found. */
+    private static class Result {
+        /**
+         * Records a finding.
+         * @param fileExists indicates whether the file exists.
+         * @param isClean indicates whether it matches its blob.
+         * @param hashedStat is the stat data taken before hashing a clean
+         *                   file, or null if it was not hashed.
+         */
+        Result(boolean fileExists, boolean isClean, long[] hashedStat) {
+            exists = fileExists;
+            clean = isClean;
+            stat = hashedStat;
+        }
+
+        /** Whether the file exists. */
+        final boolean exists;
+
+        /** Whether the file matches its blob. */
+        final boolean clean;
+
+        /** Stat data to record, or null. */
+        final long[] stat;
+    }
+
+    /** Fewest queued checks worth handing to the pool. */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    /** The index. */
+    private final Index index;
+
+    /** The working directory. */
+    private final File workDir;
+
+    /** Queued checks as {name, blob id} pairs. */
+    private final List<String[]> pending = new ArrayList<>();
+
+    /** Names of checked files that do not exist. */
+    private final HashSet<String> missing = new HashSet<>();
+
+    /** Names of checked files that do not match their blobs. */
+    private final HashSet<String> modified = new HashSet<>();
+}
@@ -0,0 +1,209 @@
+import sys, re, random, math
+from subprocess import run, DEVNULL, PIPE, STDOUT
+from os.path import abspath, exists, join, dirname
+from getopt import getopt, GetoptError
+from os import environ, makedirs
+from hashlib import sha1
+from shutil import rmtree
+
+USAGE = """\
+Usage: python3 genrepo.py OPTIONS DIR
+
+Creates a Gitlet repository in DIR, which must not exist, with the shape
+given by OPTIONS, by running gitlet.Main (found on CLASSPATH) in it.
+
+   OPTIONS may include
+       --files=N      Number of files in the first commit (default 100).
+       --dir-size=N   Number of files in each directory (default 50).
+       --sizes=DIST   Distribution of file sizes in bytes, one of
+                      fixed:S, uniform:MIN:MAX or lognormal:MEDIAN:SIGMA
+                      (default lognormal:2000:1).
+       --branches=N   Number of branches made from the first commit, the
+                      fan-out (default 0: all commits go on master).
+       --depth=N      Number of commits on each branch (default 10).
+       --changes=N    Number of files each commit changes (default 1).
+       --merge-every=N
+                      Merge each branch into master after every N of its
+                      commits (default 0: never).
+       --seed=N       Seed of the random contents (default 0).
+       --no-serve     Do not run the command server while generating.
+       --verbose      Print each command.
+
+Branch B (named b0, b1, ...) only changes files whose number is B modulo
+the number of branches, so merges are free of conflicts.  The commits are
+made round robin over the branches, and the repository is left on master.
+"""
+
+GITLET_COMMAND = "java gitlet.Main"
+
+SHAPE = { 'files': 100, 'dir-size': 50, 'sizes': "lognormal:2000:1",
+          'branches': 0, 'depth': 10, 'changes': 1, 'merge-every': 0,
+          'seed': 0 }
+
+WORDS = """alpha bravo charlie delta echo foxtrot golf hotel india juliet
+kilo lima mike november oscar papa quebec romeo sierra tango uniform
+victor whiskey xray yankee zulu""".split()
+
+def parseShape(args):
+    """The shape given by the options ARGS (a list of strings), with the
+    defaults in SHAPE for those missing, and the remaining arguments."""
+    shape = dict(SHAPE)
+    opts, rest = getopt(args, '', [ k + '=' for k in SHAPE ])
+    for opt, val in opts:
+        key = opt[2:]
+        shape[key] = val if key == 'sizes' else int(val)
+    sizeChooser(shape['sizes'], random.Random())
+    return shape, rest
+
+def shapeKey(shape):
+    """A name for the repository of SHAPE, for caching it."""
+    text = " ".join("{}={}".format(k, shape[k]) for k in sorted(shape))
+    return sha1(text.encode()).hexdigest()[:12]
+
+def sizeChooser(dist, rand):
+    """A function returning random file sizes from the distribution DIST,
+    drawn with RAND."""
+    parts = dist.split(':')
+    try:
+        if parts[0] == 'fixed' and len(parts) == 2:
+            size = int(parts[1])
+            return lambda: size
+        elif parts[0] == 'uniform' and len(parts) == 3:
+            low, high = int(parts[1]), int(parts[2])
+            return lambda: rand.randint(low, high)
+        elif parts[0] == 'lognormal' and len(parts) == 3:
+            mu, sigma = float(parts[1]), float(parts[2])
+            mu = math.log(mu)
+            return lambda: int(rand.lognormvariate(mu, sigma))
+    except ValueError:
+        pass
+    raise ValueError("bad size distribution: {}".format(dist))
+
+def fileName(i, shape):
+    return "d{}/f{}.txt".format(i // shape['dir-size'], i)
+
+def fileContents(size, rand, tag):
+    """Text of about SIZE bytes of random words, starting with TAG."""
+    lines = [tag]
+    n = len(tag) + 1
+    while n < size:
+        line = " ".join(rand.choice(WORDS) for _ in range(8))
+        lines.append(line)
+        n += len(line) + 1
+    return "\n".join(lines) + "\n"
+
+class Generator:
+    """Runs the commands that build one repository."""
+
+    def __init__(self, dir, shape, verbose=False):
+        self.dir = dir
+        self.shape = shape
+        self.verbose = verbose
+        self.rand = random.Random(shape['seed'])
+        self.size = sizeChooser(shape['sizes'], self.rand)
+
+    def gitlet(self, *args):
+        if self.verbose:
+            print("+ gitlet {}".format(" ".join(args)))
+        result = run(GITLET_COMMAND.split() + list(args), cwd=self.dir,
+                     stdin=DEVNULL, stdout=PIPE, stderr=STDOUT,
+                     universal_newlines=True)
+        if result.returncode != 0 or re.search(r'Exception|Error',
+                                               result.stdout):
+            raise ValueError("gitlet {} failed: {}"
+                             .format(" ".join(args), result.stdout.strip()))
+        return result.stdout
+
+    def write(self, i, tag):
+        name = fileName(i, self.shape)
+        path = join(self.dir, name)
+        makedirs(dirname(path), exist_ok=True)
+        with open(path, 'w') as out:
+            out.write(fileContents(self.size(), self.rand, tag))
+        return name
+
+    def change(self, owned, commit, tag):
+        """Changes, adds and commits the next files of OWNED, the numbers
+        of the files this branch may change, as commit number COMMIT."""
+        names = []
+        for k in range(self.shape['changes']):
+            i = owned[(commit * self.shape['changes'] + k) % len(owned)]
+            names.append(self.write(i, "{} {}".format(tag, commit)))
+        self.gitlet("add", *names)
+        self.gitlet("commit", "{} commit {}".format(tag, commit))
+
+    def generate(self):
+        shape = self.shape
+        files, branches = shape['files'], shape['branches']
+        for i in range(files):
+            self.write(i, "file {}".format(i))
+        self.gitlet("add", ".")
+        self.gitlet("commit", "{} files".format(files))
+        if branches == 0:
+            owned = list(range(files))
+            for c in range(shape['depth']):
+                self.change(owned, c, "master")
+            return
+        names = [ "b{}".format(b) for b in range(branches) ]
+        owned = [ list(range(b, files, branches)) for b in range(branches) ]
+        for name in names:
+            self.gitlet("branch", name)
+        for c in range(shape['depth']):
+            for b, name in enumerate(names):
+                if not owned[b]:
+                    continue
+                self.gitlet("checkout", name)
+                self.change(owned[b], c, name)
+                if shape['merge-every'] > 0 \
+                   and (c + 1) % shape['merge-every'] == 0:
+                    self.gitlet("checkout", "master")
+                    self.gitlet("merge", name)
+        self.gitlet("checkout", "master")
+
+def generate(dir, shape, serve=True, verbose=False):
+    """Creates the repository of SHAPE in the new directory DIR.  Unless
+    SERVE is false, runs the command server while doing so."""
+    makedirs(dir)
+    gen = Generator(dir, shape, verbose)
+    gen.gitlet("init")
+    try:
+        if serve:
+            gen.gitlet("serve", "start")
+        try:
+            gen.generate()
+        finally:
+            if serve:
+                gen.gitlet("serve", "stop")
+    except:
+        rmtree(dir, ignore_errors=True)
+        raise
+
+def cached(cache, args, verbose=False):
+    """The directory of the repository with the shape given by the options
+    ARGS, generating it under CACHE if it is not already there."""
+    shape, rest = parseShape(args)
+    if rest:
+        raise ValueError("bad shape: {}".format(" ".join(args)))
+    dir = join(cache, shapeKey(shape))
+    if not exists(dir):
+        generate(dir, shape, verbose=verbose)
+    return dir
+
+if __name__ == "__main__":
+    try:
+        args = [ a for a in sys.argv[1:]
+                 if a not in ("--no-serve", "--verbose") ]
+        shape, rest = parseShape(args)
+    except (GetoptError, ValueError) as excp:
+        print(excp, file=sys.stderr)
+        print(USAGE, file=sys.stderr)
+        sys.exit(1)
+    if len(rest) != 1 or exists(rest[0]):
+        print(USAGE, file=sys.stderr)
+        sys.exit(1)
+    try:
+        generate(abspath(rest[0]), shape, "--no-serve" not in sys.argv,
+                 "--verbose" in sys.argv)
+    except ValueError as excp:
+        print(excp.args[0], file=sys.stderr)
+        sys.exit(1)
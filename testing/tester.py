@@ -1,11 +1,17 @@
 import sys, re
 from subprocess import \
-     check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
+     check_output, Popen, PIPE, STDOUT, DEVNULL, CalledProcessError, \
+     TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
-from shutil import copyfile, rmtree
+from os import chdir, environ, getcwd, mkdir, remove, access, W_OK, \
+     wait4, killpg, waitstatus_to_exitcode
+from shutil import copyfile, copytree, rmtree
+from signal import SIGKILL
+from threading import Timer
+from time import perf_counter
 from math import log
+import genrepo
 
 SHORT_USAGE = """\
 Usage: python3 tester.py OPTIONS TEST.in ...
@@ -22,6 +28,11 @@ Usage: python3 tester.py OPTIONS TEST.in ...
        --tolerance=N  Set the maximum allowed edit distance between program
                       output and expected output to N (default 3).
        --verbose      Print extra information about execution.
+       --timing       Time each execution of gitlet, report the times, and
+                      fail a test when an execution goes over the budget
+                      set by its B command.
+       --repos=DIR    Keep the repositories made by G commands in DIR
+                      (default "repos"), to reuse them in later runs.
 """
 
 USAGE = SHORT_USAGE + """\
@@ -45,6 +56,17 @@ The instructions each have one of the following forms:
           intended to let you set up remote repositories.
    T N    Set the timeout for gitlet commands in the rest of this test to N
           seconds.
+   G OPTIONS
+          Copy a generated repository, with the shape given by OPTIONS, into
+          the current directory.  OPTIONS are those of genrepo.py, such as
+          --files=10000 --branches=8 --depth=50 --merge-every=10.  The
+          repository is generated (slowly) by running gitlet the first time
+          a shape is used, and kept in the directory given by --repos.
+   B SECONDS [MEGABYTES]
+          With --timing, report an error if a later execution of gitlet in
+          this test takes more than SECONDS of real time or has a peak
+          resident set of more than MEGABYTES.  A budget of 0 is no budget.
+          Without --timing, has no effect.
    + NAME F
           Copy the contents of src/F into a file named NAME.
    - NAME
@@ -79,7 +101,8 @@ For each TEST.in, reports at most one error.  Without the --show option,
 simply indicates tests passed and failed.  If N is postive, also prints details
 of the first N failing tests. With --show=all, shows details of all failing
 tests.  With --keep, keeps the directories created for the tests (with names
-TEST.dir).
+TEST.dir).  With --timing, also prints the time and peak memory of each
+execution of gitlet in passing tests.
 
 When finished, reports number of tests passed and failed, and the number of
 faulty TEST.in files."""
@@ -161,6 +184,59 @@ def doExecute(cmnd, dir, timeout):
     finally:
         chdir(here)
 
+def doTimedExecute(cmnd, dir, timeout):
+    """As for doExecute, but also returns the real time in seconds and the
+    peak resident set in megabytes of the execution."""
+    full_cmnd = "{} {}".format(GITLET_COMMAND, cmnd)
+    start = perf_counter()
+    proc = Popen(full_cmnd, shell=True, cwd=dir, universal_newlines=True,
+                 stdin=DEVNULL, stdout=PIPE, stderr=STDOUT,
+                 start_new_session=True)
+    killed = []
+    def kill():
+        killed.append(True)
+        try:
+            killpg(proc.pid, SIGKILL)
+        except OSError:
+            pass
+    timer = Timer(timeout, kill)
+    timer.start()
+    try:
+        out = proc.stdout.read()
+        _, status, usage = wait4(proc.pid, 0)
+        proc.returncode = code = waitstatus_to_exitcode(status)
+    finally:
+        timer.cancel()
+        proc.stdout.close()
+    seconds = perf_counter() - start
+    megabytes = usage.ru_maxrss / 1024
+    if killed:
+        return "timeout", None, seconds, megabytes
+    if code != 0:
+        return ("java gitlet.Main exited with code {}".format(code), out,
+                seconds, megabytes)
+    return "OK", out, seconds, megabytes
+
+def overBudget(seconds, megabytes, budget):
+    """An error message if SECONDS and MEGABYTES go over BUDGET, a pair of
+    limits, 0 meaning none, or else None."""
+    if budget[0] and seconds > budget[0]:
+        return "over time budget: {:.2f} s > {:g} s".format(seconds,
+                                                           budget[0])
+    if budget[1] and megabytes > budget[1]:
+        return "over memory budget: {:.0f} MB > {:g} MB".format(megabytes,
+                                                              budget[1])
+    return None
+
+def doGenerate(args, dir):
+    """Copies the generated repository with shape ARGS into DIR."""
+    try:
+        repo = genrepo.cached(repos_dir, args.split(), verbose)
+    except (GetoptError, ValueError) as excp:
+        raise ValueError("could not generate repository: {}"
+                         .format(excp.args[0]))
+    copytree(repo, dir, dirs_exist_ok=True)
+
 def canonicalize(s):
     if s is None:
         return None
@@ -242,6 +318,8 @@ def doTest(test):
     if verbose:
         print("Testing directory: {}".format(tmpdir))
     timeout = TIMEOUT
+    budget = (0, 0)
+    timings = []
     defns = {}
 
     def do_substs(L):
@@ -274,6 +352,9 @@ def doTest(test):
             line_num, line = next(inp, (line_num, ''))
             if line == "":
                 print("OK")
+                for cmnd, seconds, megabytes in timings:
+                    print("    {:8.3f} s {:6.0f} MB  {}"
+                          .format(seconds, megabytes, cmnd))
                 return True
             if not Match(r'\s*#', line):
                 line = do_substs(line)
@@ -296,6 +377,13 @@ def doTest(test):
                     timeout = float(Group(1))
                 except:
                     ValueError("bad time: {}".format(line))
+            elif Match(r'G\s+(.*\S)', line):
+                doGenerate(Group(1), cdir)
+            elif Match(r'B\s*(\S+)(?:\s+(\S+))?\s*$', line):
+                try:
+                    budget = (float(Group(1)), float(Group(2) or 0))
+                except ValueError:
+                    raise ValueError("bad budget: {}".format(line.rstrip()))
             elif Match(r'\+\s*(\S+)\s+(\S+)', line):
                 doCopy(Group(1), Group(2), cdir)
             elif Match(r'-\s*(\S+)', line):
@@ -313,7 +401,12 @@ def doTest(test):
                         is_regexp = Group(1)
                         break
                     expected.append(do_substs(L))
-                msg, out = doExecute(cmnd, cdir, timeout)
+                if timing:
+                    msg, out, seconds, megabytes = \
+                        doTimedExecute(cmnd, cdir, timeout)
+                    timings.append((cmnd, seconds, megabytes))
+                else:
+                    msg, out = doExecute(cmnd, cdir, timeout)
                 if verbose:
                     if out:
                         print(re.sub(r'(?m)^', '- ', chop_nl(out)))
@@ -321,6 +414,8 @@ def doTest(test):
                     if not correctProgramOutput(expected, out, last_groups,
                                                 is_regexp):
                         msg = "incorrect output"
+                if msg == "OK" and timing:
+                    msg = overBudget(seconds, megabytes, budget) or "OK"
                 if msg != "OK":
                     print("ERROR ({})".format(msg))
                     reportDetails(test, included_files, line_num)
@@ -357,12 +452,14 @@ if __name__ == "__main__":
     verbose = False
     src_dir = 'src'
     output_tolerance = 3
+    timing = False
+    repos_dir = 'repos'
 
     try:
         opts, files = \
             getopt(sys.argv[1:], '',
                    ['show=', 'keep', 'progdir=', 'verbose', 'src=',
-                    'tolerance='])
+                    'tolerance=', 'timing', 'repos='])
         for opt, val in opts:
             if opt == '--show':
                 show = int(val)
@@ -376,6 +473,10 @@ if __name__ == "__main__":
                 verbose = True
             elif opt == "--tolerance":
                 output_tolerance = int(val)
+            elif opt == "--timing":
+                timing = True
+            elif opt == "--repos":
+                repos_dir = val
         if prog_dir is None:
             prog_dir = abspath(getcwd())
             k = 10
@@ -399,6 +500,7 @@ if __name__ == "__main__":
     else:
         environ['CLASSPATH'] = "{}:{}".format(prog_dir, environ['CLASSPATH'])
         GITLET_COMMAND = 'exec ' + GITLET_COMMAND
+    repos_dir = abspath(repos_dir)
 
     num_tests = len(files)
     errs = 0